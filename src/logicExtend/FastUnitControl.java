@@ -24,10 +24,12 @@ public class FastUnitControl {
     /** fastUnitControl指令的分支枚举 */
     public enum FastUnitControlType {
         itemTake("from", "item", "amount"),
+        itemTakeNear("item", "amount", "source"),
         itemDrop("to", "amount"),
         payTake("takeUnits", "x", "y"),
         payDrop("x", "y"),
-        assist("assister", "target");
+        assist("assister", "target"),
+        assistLink("assister", "target");
         
         public final String[] params;
         
@@ -102,136 +104,326 @@ public class FastUnitControl {
             LVar p2Var = p2 != null && !p2.isEmpty() ? builder.var(p2) : null;
             LVar p3Var = p3 != null && !p3.isEmpty() ? builder.var(p3) : null;
             
-            return new LExecutor.LInstruction() {
-                @Override
-                public void run(LExecutor exec) {
-                    Object unitObj = exec.unit.obj();
-                    // 调用原版的checkLogicAI方法，确保单位处于逻辑控制之下
-                    LogicAI ai = LExecutor.UnitControlI.checkLogicAI(exec, unitObj);
+            // 每个分支编译为独立的指令类，运行时不再按分支类型分派
+            switch(type) {
+                case itemTake: return new ItemTakeI(p1Var, p2Var, p3Var);
+                case itemTakeNear: return new ItemTakeNearI(p1Var, p2Var, p3Var);
+                case itemDrop: return new ItemDropI(p1Var, p2Var);
+                case payTake: return new PayTakeI(p1Var, p2Var, p3Var);
+                case payDrop: return new PayDropI(p1Var, p2Var);
+                case assist: return new AssistI(p1Var, p2Var);
+                case assistLink: return new AssistLinkI(p1Var, p2Var);
+                default: return null;
+            }
+        }
+    }
+    
+    /** 获取当前绑定单位的LogicAI，单位不处于逻辑控制之下时返回null */
+    static LogicAI control(LExecutor exec) {
+        Object unitObj = exec.unit.obj();
+        // 调用原版的checkLogicAI方法，确保单位处于逻辑控制之下
+        LogicAI ai = LExecutor.UnitControlI.checkLogicAI(exec, unitObj);
+        // 只有控制标准AI单位
+        if(ai != null && unitObj instanceof Unit) {
+            // 更新控制计时器，保持逻辑控制状态
+            ai.controlTimer = LogicAI.logicControlTimeout;
+            return ai;
+        }
+        return null;
+    }
+    
+    /** 常量操作数在编译时取值，变量为null或非常量时返回null */
+    static Object constObj(LVar var) {
+        return var != null && var.constant ? var.obj() : null;
+    }
+    
+    /** itemTake分支：从建筑中取出物品，物品和数量为常量时在编译时取值 */
+    public static class ItemTakeI implements LExecutor.LInstruction {
+        public LVar from, item, amount;
+        public Item constItem;
+        public int constAmount = -1;
+        
+        public ItemTakeI(LVar from, LVar item, LVar amount) {
+            this.from = from;
+            this.item = item;
+            this.amount = amount;
+            if(constObj(item) instanceof Item i) constItem = i;
+            if(amount == null) constAmount = 1;
+            else if(amount.constant && !amount.isobj) constAmount = amount.numi();
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            LogicAI ai = control(exec);
+            if(ai == null) return;
+            Unit unit = ai.unit();
+            Building build = from != null ? from.building() : null;
+            Item it = constItem != null ? constItem : item != null && item.obj() instanceof Item i ? i : null;
+            int n = constAmount >= 0 ? constAmount : amount.numi();
+            // 超出转移预算时推迟到下一tick
+            if(!LTransferBudget.tryAcquire(exec)) {
+                LTransferBudget.defer(exec, unit, build, () -> itemTake(unit, build, it, n));
+                return;
+            }
+            itemTake(unit, build, it, n);
+        }
+    }
+    
+    /** itemTakeNear分支：通过物品位置索引找到距离单位最近的来源建筑，写入source，在取物范围内时直接取物 */
+    public static class ItemTakeNearI implements LExecutor.LInstruction {
+        public LVar item, amount, source;
+        public Item constItem;
+        public int constAmount = -1;
+        
+        public ItemTakeNearI(LVar item, LVar amount, LVar source) {
+            this.item = item;
+            this.amount = amount;
+            this.source = source;
+            if(constObj(item) instanceof Item i) constItem = i;
+            if(amount == null) constAmount = 1;
+            else if(amount.constant && !amount.isobj) constAmount = amount.numi();
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            LogicAI ai = control(exec);
+            if(ai == null) return;
+            Unit unit = ai.unit();
+            Item it = constItem != null ? constItem : item != null && item.obj() instanceof Item i ? i : null;
+            Building build = it == null ? null : LItemIndex.nearest(unit.team, it, unit.x, unit.y, 1);
+            if(source != null) source.setobj(build);
+            // 不在取物范围内时只返回来源建筑，由逻辑控制单位移动过去
+            if(build == null || !unit.within(build, logicItemTransferRange + build.block.size * tilesize/2f)) return;
+            
+            int n = constAmount >= 0 ? constAmount : amount.numi();
+            // 超出转移预算时推迟到下一tick
+            if(!LTransferBudget.tryAcquire(exec)) {
+                LTransferBudget.defer(exec, unit, build, () -> itemTake(unit, build, it, n));
+                return;
+            }
+            itemTake(unit, build, it, n);
+        }
+    }
+    
+    /** itemDrop分支：将物品放入建筑或丢弃到@air */
+    public static class ItemDropI implements LExecutor.LInstruction {
+        public LVar to, amount;
+        public int constAmount = -1;
+        
+        public ItemDropI(LVar to, LVar amount) {
+            this.to = to;
+            this.amount = amount;
+            if(amount == null) constAmount = 1;
+            else if(amount.constant && !amount.isobj) constAmount = amount.numi();
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            LogicAI ai = control(exec);
+            if(ai == null) return;
+            Unit unit = ai.unit();
+            Object target = to != null ? to.obj() : null;
+            Building build = to != null ? to.building() : null;
+            int n = constAmount >= 0 ? constAmount : amount.numi();
+            // 超出转移预算时推迟到下一tick
+            if(!LTransferBudget.tryAcquire(exec)) {
+                LTransferBudget.defer(exec, unit, build, () -> itemDrop(unit, target, build, n));
+                return;
+            }
+            itemDrop(unit, target, build, n);
+        }
+    }
+    
+    /** payTake分支：拾取单位或建筑载荷 */
+    public static class PayTakeI implements LExecutor.LInstruction {
+        public LVar takeUnits, x, y;
+        
+        public PayTakeI(LVar takeUnits, LVar x, LVar y) {
+            this.takeUnits = takeUnits;
+            this.x = x;
+            this.y = y;
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            LogicAI ai = control(exec);
+            if(ai == null) return;
+            Unit unit = ai.unit();
+            boolean units = takeUnits != null && takeUnits.bool();
+            float px = World.unconv(x != null ? x.numf() : World.conv(unit.x));
+            float py = World.unconv(y != null ? y.numf() : World.conv(unit.y));
+            // 超出转移预算时推迟到下一tick
+            if(!LTransferBudget.tryAcquire(exec)) {
+                LTransferBudget.defer(exec, unit, null, () -> payTake(unit, units, px, py));
+                return;
+            }
+            payTake(unit, units, px, py);
+        }
+    }
+    
+    /** 在指定位置拾取单位或建筑载荷 */
+    public static void payTake(Unit unit, boolean units, float px, float py) {
+        if(unit.isValid() && unit.within(px, py, unit.type.hitSize * 2f) && unit instanceof Payloadc pay) {
+            if(units) {
+                Unit result = mindustry.entities.Units.closest(unit.team, px, py, unit.type.hitSize * 2f, u -> 
+                    u.isAI() && u.isGrounded() && pay.canPickup(u) && u.within(px, py, u.hitSize + unit.hitSize * 1.2f));
+                
+                if(result != null) {
+                    Call.pickedUnitPayload(unit, result);
+                }
+            } else {
+                Building build = world.buildWorld(px, py);
+                
+                if(build != null && build.team == unit.team) {
+                    Payload current = build.getPayload();
+                    if(current != null && pay.canPickupPayload(current)) {
+                        Call.pickedBuildPayload(unit, build, false);
+                    } else if(build.block.buildVisibility != BuildVisibility.hidden && build.canPickup() && pay.canPickup(build)) {
+                        Call.pickedBuildPayload(unit, build, true);
+                    }
+                }
+            }
+        }
+    }
+    
+    /** payDrop分支：卸下载荷 */
+    public static class PayDropI implements LExecutor.LInstruction {
+        public LVar x, y;
+        
+        public PayDropI(LVar x, LVar y) {
+            this.x = x;
+            this.y = y;
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            LogicAI ai = control(exec);
+            if(ai == null) return;
+            Unit unit = ai.unit();
+            float dropX = World.unconv(x != null ? x.numf() : World.conv(unit.x));
+            float dropY = World.unconv(y != null ? y.numf() : World.conv(unit.y));
+            // 超出转移预算时推迟到下一tick
+            if(!LTransferBudget.tryAcquire(exec)) {
+                LTransferBudget.defer(exec, unit, null, () -> payDrop(unit, dropX, dropY));
+                return;
+            }
+            payDrop(unit, dropX, dropY);
+        }
+    }
+    
+    /** 在指定位置卸下载荷 */
+    public static void payDrop(Unit unit, float dropX, float dropY) {
+        if(unit.isValid() && unit instanceof Payloadc pay && pay.hasPayload()) {
+            Call.payloadDropped(unit, dropX, dropY);
+        }
+    }
+    
+    /** assist分支：协助其他单位建造 */
+    public static class AssistI implements LExecutor.LInstruction {
+        public LVar assister, target;
+        
+        public AssistI(LVar assister, LVar target) {
+            this.assister = assister;
+            this.target = target;
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            LogicAI ai = control(exec);
+            if(ai == null) return;
+            assist(ai, assister != null ? assister.obj() : null, target != null ? target.obj() : null);
+        }
+    }
+    
+    /** assistLink分支：建立持久的协助链接，之后由LAssistLinks每tick同步建造计划；target不是单位时解除链接 */
+    public static class AssistLinkI implements LExecutor.LInstruction {
+        public LVar assister, target;
+        
+        public AssistLinkI(LVar assister, LVar target) {
+            this.assister = assister;
+            this.target = target;
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            Object assisterObj = assister != null ? assister.obj() : null;
+            // 协助者本身需要处于当前处理器的逻辑控制之下
+            LogicAI ai = LExecutor.UnitControlI.checkLogicAI(exec, assisterObj);
+            if(ai == null || !(assisterObj instanceof Unit unit) || exec.build == null) return;
+            ai.controlTimer = LogicAI.logicControlTimeout;
+            
+            Unit targetUnit = target != null && target.obj() instanceof Unit t && t.isValid() && t.team == unit.team ? t : null;
+            LAssistLinks.link(unit, targetUnit, exec.build);
+        }
+    }
+    
+    /** 让assisterObj指向的单位复制targetObj指向的单位的建造计划 */
+    public static void assist(LogicAI ai, Object assisterObj, Object targetObj) {
+        // 检查参数类型
+        if(assisterObj instanceof Unit assister && targetObj instanceof Unit target) {
+            // 检查单位是否有效
+            if(assister.isValid() && target.isValid()) {
+                // 检查单位是否属于同一队伍
+                if(assister.team() == target.team()) {
+                    // 设置unit.updateBuilding = true，允许移动时建造
+                    assister.updateBuilding = true;
+                    
+                    // 在execCache中存储协助目标
+                    ai.execCache.put("assistTarget", target);
                     
-                    // 只有控制标准AI单位
-                    if(unitObj instanceof Unit unit && ai != null){
-                        // 更新控制计时器，保持逻辑控制状态
-                        ai.controlTimer = LogicAI.logicControlTimeout;
-                        
-                        switch(type) {
-                            case itemTake:
-                                Building from = p1Var != null ? p1Var.building() : null;
-                                Item item = p2Var != null ? p2Var.obj() instanceof Item ? (Item)p2Var.obj() : null : null;
-                                int amount = p3Var != null ? (int)p3Var.numi() : 1;
-                                
-                                // 与原版一致的逻辑，只是去除了CD检查
-                                if(from != null && from.team == unit.team && from.isValid() && from.items != null &&
-                                   item != null && unit.within(from, logicItemTransferRange + from.block.size * tilesize/2f)){
-                                    int taken = Math.min(from.items.get(item), Math.min(amount, unit.maxAccepted(item)));
-                                    if(taken > 0) {
-                                        Call.takeItems(from, item, taken, unit);
-                                    }
-                                }
-                                break;
-                                
-                            case itemDrop:
-                                Building to = p1Var != null ? p1Var.building() : null;
-                                int dropAmount = p2Var != null ? (int)p2Var.numi() : 1;
-                                
-                                // 与原版一致的逻辑，只是去除了CD检查
-                                if(unit.item() != null) {
-                                    //clear item when dropping to @air
-                                    if(p1Var.obj() == air) {
-                                        //only server-side; no need to call anything, as items are synced in snapshots
-                                        if(!net.client()) {
-                                            unit.clearItem();
-                                        }
-                                    } else if(to != null && to.team == unit.team && to.isValid()) {
-                                        int dropped = Math.min(unit.stack.amount, dropAmount);
-                                        if(dropped > 0 && unit.within(to, logicItemTransferRange + to.block.size * tilesize/2f)) {
-                                            int accepted = to.acceptStack(unit.item(), dropped, unit);
-                                            if(accepted > 0) {
-                                                Call.transferItemTo(unit, unit.item(), accepted, unit.x, unit.y, to);
-                                            }
-                                        }
-                                    }
-                                }
-                                break;
-                                
-                            case payTake:
-                                boolean takeUnits = p1Var != null ? p1Var.bool() : false;
-                                float x = World.unconv(p2Var != null ? p2Var.numf() : World.conv(unit.x));
-                                float y = World.unconv(p3Var != null ? p3Var.numf() : World.conv(unit.y));
-                                
-                                if(unit.within(x, y, unit.type.hitSize * 2f) && unit instanceof Payloadc pay) {
-                                    if(takeUnits) {
-                                        Unit result = mindustry.entities.Units.closest(unit.team, x, y, unit.type.hitSize * 2f, u -> 
-                                            u.isAI() && u.isGrounded() && pay.canPickup(u) && u.within(x, y, u.hitSize + unit.hitSize * 1.2f));
-                                        
-                                        if(result != null) {
-                                            Call.pickedUnitPayload(unit, result);
-                                        }
-                                    } else {
-                                        Building build = world.buildWorld(x, y);
-                                        
-                                        if(build != null && build.team == unit.team) {
-                                            Payload current = build.getPayload();
-                                            if(current != null && pay.canPickupPayload(current)) {
-                                                Call.pickedBuildPayload(unit, build, false);
-                                            } else if(build.block.buildVisibility != BuildVisibility.hidden && build.canPickup() && pay.canPickup(build)) {
-                                                Call.pickedBuildPayload(unit, build, true);
-                                            }
-                                        }
-                                    }
-                                }
-                                break;
-                                
-                            case payDrop:
-                                float dropX = World.unconv(p1Var != null ? p1Var.numf() : World.conv(unit.x));
-                                float dropY = World.unconv(p2Var != null ? p2Var.numf() : World.conv(unit.y));
-                                
-                                if(unit instanceof Payloadc pay && pay.hasPayload()) {
-                                    Call.payloadDropped(unit, dropX, dropY);
-                                }
-                                break;
-                                
-                            case assist:
-                                // 获取协助者和目标单位
-                                Object assisterObj = p1Var != null ? p1Var.obj() : null;
-                                Object targetObj = p2Var != null ? p2Var.obj() : null;
-                                
-                                // 检查参数类型
-                                if(assisterObj instanceof Unit assister && targetObj instanceof Unit target) {
-                                    // 检查单位是否有效
-                                    if(assister.isValid() && target.isValid()) {
-                                        // 检查单位是否属于同一队伍
-                                        if(assister.team() == target.team()) {
-                                            // 设置unit.updateBuilding = true，允许移动时建造
-                                            assister.updateBuilding = true;
-                                            
-                                            // 在execCache中存储协助目标
-                                            ai.execCache.put("assistTarget", target);
-                                            
-                                            // 执行协助建造逻辑
-                                            if(target.activelyBuilding()) {
-                                                // 复制目标单位的建造计划，包括breaking状态
-                                                assister.plans.clear();
-                                                BuildPlan targetPlan = target.buildPlan();
-                                                if(targetPlan != null) {
-                                                    // 使用copy()方法复制BuildPlan，确保所有状态都被复制
-                                                    BuildPlan assistPlan = targetPlan.copy();
-                                                    // 显式复制breaking状态，确保正确
-                                                    assistPlan.breaking = targetPlan.breaking;
-                                                    assister.plans.addFirst(assistPlan);
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                                break;
-                            default:
-                                break;
+                    // 执行协助建造逻辑
+                    if(target.activelyBuilding()) {
+                        // 复制目标单位的建造计划，包括breaking状态
+                        assister.plans.clear();
+                        BuildPlan targetPlan = target.buildPlan();
+                        if(targetPlan != null) {
+                            // 使用copy()方法复制BuildPlan，确保所有状态都被复制
+                            BuildPlan assistPlan = targetPlan.copy();
+                            // 显式复制breaking状态，确保正确
+                            assistPlan.breaking = targetPlan.breaking;
+                            assister.plans.addFirst(assistPlan);
                         }
                     }
                 }
-            };
+            }
+        }
+    }
+    
+    /** 从建筑中取出物品，与原版一致的逻辑，只是去除了CD检查 */
+    public static boolean itemTake(Unit unit, Building from, Item item, int amount) {
+        if(unit.isValid() && from != null && from.team == unit.team && from.isValid() && from.items != null &&
+           item != null && unit.within(from, logicItemTransferRange + from.block.size * tilesize/2f)){
+            int taken = Math.min(from.items.get(item), Math.min(amount, unit.maxAccepted(item)));
+            if(taken > 0) {
+                // 多人游戏中按tick合批发送
+                LTransferBatcher.takeItems(from, item, taken, unit);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /** 将物品放入建筑，target为@air时清空单位物品，与原版一致的逻辑，只是去除了CD检查 */
+    public static boolean itemDrop(Unit unit, Object target, Building to, int amount) {
+        if(!unit.isValid() || unit.item() == null) return false;
+        //clear item when dropping to @air
+        if(target == air) {
+            //only server-side; no need to call anything, as items are synced in snapshots
+            if(!net.client()) {
+                unit.clearItem();
+            }
+            return true;
+        } else if(to != null && to.team == unit.team && to.isValid()) {
+            int dropped = Math.min(unit.stack.amount, amount);
+            if(dropped > 0 && unit.within(to, logicItemTransferRange + to.block.size * tilesize/2f)) {
+                int accepted = to.acceptStack(unit.item(), dropped, unit);
+                if(accepted > 0) {
+                    LTransferBatcher.transferItemTo(unit, unit.item(), accepted, unit.x, unit.y, to);
+                    return true;
+                }
+            }
         }
+        return false;
     }
     
     /** 注册自定义指令 */
@@ -0,0 +1,166 @@
+package logicExtend;
+
+import arc.Events;
+import arc.struct.IntIntMap;
+import arc.struct.IntMap;
+import mindustry.ai.types.LogicAI;
+import mindustry.entities.units.BuildPlan;
+import mindustry.game.EventType;
+import mindustry.gen.Building;
+import mindustry.gen.Unit;
+
+import static mindustry.Vars.state;
+
+/**
+ * 持久的协助建造链接
+ * 普通的assist每次执行都要清空并复制建造计划，逻辑必须每tick重复执行才能保持同步；
+ * 链接建立后每tick由更新事件检查目标单位的建造计划，只在计划变化时复制。
+ * 链接不会代替处理器保持逻辑控制：处理器需要在逻辑控制超时前重复执行assistLink续期，
+ * 超过LogicAI.logicControlTimeout未续期、协助者被其他处理器控制、任一单位死亡、换队、被玩家控制或所属处理器失效时自动解除，
+ * 协助者随后和其他逻辑控制一样超时
+ */
+public class LAssistLinks {
+
+    /** 累计建立的链接数 */
+    public static long linked = 0;
+    /** 累计解除（含替换目标）的链接数 */
+    public static long released = 0;
+    /** 累计复制建造计划的次数 */
+    public static long copied = 0;
+
+    /** 单个协助链接 */
+    private static class Link {
+        Unit assister, target;
+        /** 建立链接的处理器 */
+        Building owner;
+        /** 最近一次建立或续期链接的tick */
+        double renewed;
+        /** 最近一次复制的目标计划和复制出的计划 */
+        BuildPlan source, copy;
+    }
+
+    /** 协助者单位id -> 链接 */
+    private static final IntMap<Link> links = new IntMap<>();
+    /** 目标单位id -> 以其为目标的链接数，单位死亡时用于快速判断是否需要解除 */
+    private static final IntIntMap targetRefs = new IntIntMap();
+
+    /** 注册每tick的同步和解除事件 */
+    public static void init() {
+        Events.run(EventType.Trigger.update, LAssistLinks::update);
+        Events.on(EventType.UnitDestroyEvent.class, e -> {
+            int id = e.unit.id();
+            Link link = links.get(id);
+            if (link != null) remove(link);
+            if (targetRefs.get(id, 0) > 0) {
+                IntMap.Values<Link> values = links.values();
+                while (values.hasNext()) {
+                    Link l = values.next();
+                    if (l.target == e.unit) {
+                        values.remove();
+                        unref(l);
+                    }
+                }
+            }
+        });
+        Events.on(EventType.ResetEvent.class, e -> {
+            links.clear();
+            targetRefs.clear();
+        });
+    }
+
+    /** 建立或替换assister的协助链接，target为null时解除链接 */
+    public static void link(Unit assister, Unit target, Building owner) {
+        Link link = links.get(assister.id());
+        if (target == null || target == assister) {
+            if (link != null) remove(link);
+            return;
+        }
+        if (link != null) {
+            if (link.target == target) {
+                link.owner = owner;
+                link.renewed = state.tick;
+                return;
+            }
+            unref(link);
+        } else {
+            link = new Link();
+            link.assister = assister;
+            links.put(assister.id(), link);
+        }
+        link.target = target;
+        link.owner = owner;
+        link.renewed = state.tick;
+        link.source = link.copy = null;
+        targetRefs.put(target.id(), targetRefs.get(target.id(), 0) + 1);
+        assister.updateBuilding = true;
+        linked++;
+    }
+
+    /** assister当前链接的目标单位，没有链接时返回null */
+    public static Unit targetOf(Unit assister) {
+        Link link = links.get(assister.id());
+        return link == null ? null : link.target;
+    }
+
+    /** 当前的链接数量 */
+    public static int size() {
+        return links.size;
+    }
+
+    /** 链接统计信息 */
+    public static String stats() {
+        return "协助链接: " + links.size + "，建立: " + linked + "，解除: " + released + "，计划复制: " + copied;
+    }
+
+    private static void remove(Link link) {
+        links.remove(link.assister.id());
+        unref(link);
+    }
+
+    private static void unref(Link link) {
+        int id = link.target.id();
+        int refs = targetRefs.get(id, 0) - 1;
+        if (refs <= 0) {
+            targetRefs.remove(id, 0);
+        } else {
+            targetRefs.put(id, refs);
+        }
+        released++;
+    }
+
+    /** 同步所有链接的建造计划 */
+    private static void update() {
+        if (links.isEmpty()) return;
+        IntMap.Values<Link> values = links.values();
+        while (values.hasNext()) {
+            Link link = values.next();
+            Unit assister = link.assister, target = link.target;
+            // 处理器停止续期或被其他处理器接管时解除，不再刷新逻辑控制，让其正常超时
+            if (!assister.isValid() || !target.isValid() || assister.team != target.team || assister.isPlayer()
+                || !(assister.controller() instanceof LogicAI ai) || link.owner == null || !link.owner.isValid()
+                || ai.controller != link.owner || state.tick - link.renewed > LogicAI.logicControlTimeout) {
+                values.remove();
+                unref(link);
+                continue;
+            }
+
+            assister.updateBuilding = true;
+
+            BuildPlan plan = target.activelyBuilding() ? target.buildPlan() : null;
+            if (plan == null) {
+                link.source = null;
+                continue;
+            }
+            // 目标计划没有变化且复制的计划仍在执行时不做任何事
+            if (plan == link.source && assister.buildPlan() == link.copy) continue;
+
+            BuildPlan copy = plan.copy();
+            copy.breaking = plan.breaking;
+            assister.plans.clear();
+            assister.plans.addFirst(copy);
+            link.source = plan;
+            link.copy = copy;
+            copied++;
+        }
+    }
+}
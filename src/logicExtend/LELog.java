@@ -1,128 +1,117 @@
 package logicExtend;
 
+import arc.Core;
+import arc.func.Prov;
 import arc.util.Log;
+import arc.util.Log.LogLevel;
+import arc.util.Strings;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 /**
  * 日志工具类，提供中文日志记录功能
+ * 热路径上请先用{@link #enabled()}或{@link #isEnabled(LogLevel)}判断，再构造日志消息；
+ * 也可以使用带占位符（@）或{@link Prov}的重载，日志关闭时不会拼接字符串
  */
 public class LELog {
     
     /** 日志记录开关，1表示开启日志，0表示关闭日志，默认关闭 */
     public static int debugLog = 0;
     
-    /** 日志文件路径 */
-    private static final String LOG_DIR = "E:\\SteamLibrary\\steamapps\\common\\Mindustry";
-    /** 日志文件完整路径 */
-    private static String logFilePath = "";
+    /** 最低记录级别，日志开启时为debug，可调高以只记录更重要的日志 */
+    public static LogLevel level = LogLevel.debug;
     
-    /** 日志文件 */
-    private static PrintWriter logWriter = null;
+    /** 是否开启日志，关闭时调用方只需一次分支判断 */
+    public static boolean enabled() {
+        return debugLog == 1;
+    }
+    
+    /** 指定级别的日志是否会被记录 */
+    public static boolean isEnabled(LogLevel logLevel) {
+        return debugLog == 1 && logLevel.ordinal() >= level.ordinal();
+    }
+    
+    /** 控制台回显的设置项 */
+    public static final String CONSOLE_SETTING = "lnestedlogic-log-console";
+    /** debug/info日志是否同时输出到控制台，默认关闭，避免在游戏线程上同步写控制台和last_log */
+    public static boolean consoleEcho = false;
+    
+    /** 日志目录的设置项，留空时使用Mindustry数据目录下的logicextend-logs */
+    public static final String LOG_DIR_SETTING = "lnestedlogic-log-dir";
+    /** 日志文件名 */
+    private static final String LOG_FILE = "nestedlogic.log";
+    
+    /** 异步日志文件写入器 */
+    private static LELogAppender appender = null;
+    /** 当前日志文件所在的目录设置，用于判断目录设置是否变化 */
+    private static String appliedDir = null;
+    
+    /** 日志目录 */
+    public static File logDirectory() {
+        String custom = Core.settings == null ? "" : Core.settings.getString(LOG_DIR_SETTING, "");
+        if (custom != null && !custom.isEmpty()) {
+            return new File(custom);
+        }
+        return Core.settings.getDataDirectory().child("logicextend-logs").file();
+    }
     
     /**
-     * 初始化日志文件
+     * 初始化日志文件，日志关闭时关闭日志文件
      */
     public static void initLogFile() {
-        // 只在日志开关开启时初始化日志文件
-        if (debugLog == 1) {
-            Log.infoTag("嵌套逻辑", "开始初始化日志文件...");
-            Log.infoTag("嵌套逻辑", "LOG_DIR: " + LOG_DIR);
-            
-            try {
-                // 测试文件路径是否正确
-                File testFile = new File(LOG_DIR);
-                String absolutePath = testFile.getAbsolutePath();
-                Log.infoTag("嵌套逻辑", "绝对路径: " + absolutePath);
-                logFilePath = absolutePath + "\\nestedlogic.log";
-                Log.infoTag("嵌套逻辑", "完整日志文件路径: " + logFilePath);
-                
-                // 检查目录是否存在
-                File logDir = new File(absolutePath);
-                Log.infoTag("嵌套逻辑", "目录存在: " + logDir.exists());
-                
-                if (!logDir.exists()) {
-                    Log.infoTag("嵌套逻辑", "目录不存在，尝试创建...");
-                    boolean created = logDir.mkdirs();
-                    Log.infoTag("嵌套逻辑", "目录创建结果: " + created);
-                    Log.infoTag("嵌套逻辑", "创建后目录存在: " + logDir.exists());
-                }
-                
-                if (logDir.exists()) {
-                    Log.infoTag("嵌套逻辑", "目录存在，检查写入权限...");
-                    boolean canWrite = logDir.canWrite();
-                    Log.infoTag("嵌套逻辑", "目录写入权限: " + canWrite);
-                    
-                    // 直接使用完整路径创建文件
-                    File logFile = new File(logFilePath);
-                    Log.infoTag("嵌套逻辑", "日志文件存在: " + logFile.exists());
-                    Log.infoTag("嵌套逻辑", "日志文件可写: " + logFile.canWrite());
-                    
-                    try {
-                        // 尝试创建文件
-                        if (!logFile.exists()) {
-                            boolean fileCreated = logFile.createNewFile();
-                            Log.infoTag("嵌套逻辑", "文件创建结果: " + fileCreated);
-                            Log.infoTag("嵌套逻辑", "创建后文件存在: " + logFile.exists());
-                        }
-                        
-                        // 尝试打开文件写入
-                        logWriter = new PrintWriter(new FileWriter(logFile, true));
-                        Log.infoTag("嵌套逻辑", "日志文件已成功初始化: " + logFile.getAbsolutePath());
-                        
-                        // 写入测试日志
-                        Log.infoTag("嵌套逻辑", "尝试写入测试日志...");
-                        String testMessage = "日志文件初始化成功 - " + new Date().toString();
-                        logWriter.println("[" + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + "] [嵌套逻辑] " + testMessage);
-                        logWriter.flush();
-                        Log.infoTag("嵌套逻辑", "测试日志写入成功");
-                        
-                    } catch (IOException e) {
-                        Log.errTag("嵌套逻辑", "无法创建或写入日志文件: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                } else {
-                    Log.errTag("嵌套逻辑", "无法创建目录: " + absolutePath);
-                }
-            } catch (Exception e) {
-                Log.errTag("嵌套逻辑", "初始化日志文件时发生错误: " + e.getMessage());
-                e.printStackTrace();
-            }
+        if (debugLog != 1) {
+            closeLogFile();
+            return;
+        }
+        if (appender != null) return;
+        
+        try {
+            appliedDir = Core.settings.getString(LOG_DIR_SETTING, "");
+            appender = new LELogAppender(logDirectory(), LOG_FILE);
+            Log.infoTag("嵌套逻辑", "日志文件已初始化: " + appender.file.getAbsolutePath());
+            appender.append("日志文件初始化成功");
+        } catch (Exception e) {
+            Log.errTag("嵌套逻辑", "初始化日志文件时发生错误: " + e.getMessage());
+            appender = null;
         }
     }
     
     /**
-     * 关闭日志文件
+     * 日志目录设置变化时重新打开日志文件，设置界面关闭时调用，避免输入过程中每个字符都重建日志文件
+     */
+    public static void applyLogDirectory() {
+        if (appender == null) return;
+        String dir = Core.settings.getString(LOG_DIR_SETTING, "");
+        if (dir.equals(appliedDir)) return;
+        closeLogFile();
+        initLogFile();
+    }
+    
+    /**
+     * 关闭日志文件，写完缓冲区中剩余的日志
      */
     public static void closeLogFile() {
-        if (logWriter != null) {
-            logWriter.close();
-            logWriter = null;
+        if (appender != null) {
+            appender.close();
+            if (appender.dropped > 0) {
+                Log.warn("[嵌套逻辑] 日志缓冲区已满，共丢弃 @ 条日志", appender.dropped);
+            }
+            appender = null;
         }
     }
     
+    /** 因缓冲区满被丢弃的日志数量 */
+    public static long droppedCount() {
+        return appender == null ? 0 : appender.dropped;
+    }
+    
     /**
-     * 记录日志到文件
+     * 记录日志到文件，只放入缓冲区，由后台线程写入
      * @param message 日志消息
      */
     private static void writeToFile(String message) {
-        // 只在日志开关开启时写入文件
-        if (debugLog == 1 && logWriter != null) {
-            try {
-                String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-                logWriter.println("[" + timestamp + "] [嵌套逻辑] " + message);
-                logWriter.flush();
-                Log.infoTag("嵌套逻辑", "日志已写入文件: " + message);
-            } catch (Exception e) {
-                Log.errTag("嵌套逻辑", "写入日志文件时发生错误: " + e.getMessage());
-                e.printStackTrace();
-            }
-        } else if (logWriter == null && debugLog == 1) {
-            Log.infoTag("嵌套逻辑", "日志写入失败: logWriter 为 null");
+        LELogAppender current = appender;
+        if (current != null) {
+            current.append(message);
         }
     }
     
@@ -131,8 +120,8 @@ public class LELog {
      * @param message 日志消息
      */
     public static void debug(String message) {
-        if (debugLog == 1) {
-            Log.infoTag("嵌套逻辑", message);
+        if (isEnabled(LogLevel.debug)) {
+            if (consoleEcho) Log.infoTag("嵌套逻辑", message);
             writeToFile("DEBUG: " + message);
         }
     }
@@ -142,32 +131,107 @@ public class LELog {
      * @param message 日志消息
      */
     public static void info(String message) {
-        if (debugLog == 1) {
-            Log.infoTag("嵌套逻辑", message);
+        if (isEnabled(LogLevel.info)) {
+            if (consoleEcho) Log.infoTag("嵌套逻辑", message);
             writeToFile("INFO: " + message);
         }
     }
     
     /**
-     * 记录错误日志
+     * 记录错误日志，不受日志开关控制，始终输出到控制台；日志开启时同时写入日志文件
      * @param message 日志消息
      * @param t 异常对象
      */
     public static void error(String message, Throwable t) {
-        if (debugLog == 1) {
-            Log.errTag("嵌套逻辑", message + ": " + t.getMessage());
-            writeToFile("ERROR: " + message + ": " + t.getMessage());
-        }
+        Log.errTag("嵌套逻辑", message + ": " + t.getMessage());
+        writeToFile("ERROR: " + message + ": " + t.getMessage());
     }
     
     /**
-     * 记录错误日志
+     * 记录错误日志，不受日志开关控制，始终输出到控制台；日志开启时同时写入日志文件
      * @param message 日志消息
      */
     public static void error(String message) {
-        if (debugLog == 1) {
-            Log.errTag("嵌套逻辑", message);
-            writeToFile("ERROR: " + message);
+        Log.errTag("嵌套逻辑", message);
+        writeToFile("ERROR: " + message);
+    }
+    
+    /**
+     * 记录调试日志，消息延迟构造
+     * @param message 日志消息的构造函数，日志关闭时不会被调用
+     */
+    public static void debug(Prov<String> message) {
+        if (isEnabled(LogLevel.debug)) {
+            debug(message.get());
+        }
+    }
+    
+    /**
+     * 记录调试日志，消息中的@依次替换为参数
+     * @param format 日志格式
+     * @param arg1 参数1
+     */
+    public static void debug(String format, Object arg1) {
+        if (isEnabled(LogLevel.debug)) {
+            debug(Strings.format(format, arg1));
+        }
+    }
+    
+    /**
+     * 记录调试日志，消息中的@依次替换为参数
+     * @param format 日志格式
+     * @param arg1 参数1
+     * @param arg2 参数2
+     */
+    public static void debug(String format, Object arg1, Object arg2) {
+        if (isEnabled(LogLevel.debug)) {
+            debug(Strings.format(format, arg1, arg2));
+        }
+    }
+    
+    /**
+     * 记录调试日志，消息中的@依次替换为参数
+     * @param format 日志格式
+     * @param arg1 参数1
+     * @param arg2 参数2
+     * @param arg3 参数3
+     */
+    public static void debug(String format, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(LogLevel.debug)) {
+            debug(Strings.format(format, arg1, arg2, arg3));
+        }
+    }
+    
+    /**
+     * 记录信息日志，消息延迟构造
+     * @param message 日志消息的构造函数，日志关闭时不会被调用
+     */
+    public static void info(Prov<String> message) {
+        if (isEnabled(LogLevel.info)) {
+            info(message.get());
+        }
+    }
+    
+    /**
+     * 记录信息日志，消息中的@依次替换为参数
+     * @param format 日志格式
+     * @param arg1 参数1
+     */
+    public static void info(String format, Object arg1) {
+        if (isEnabled(LogLevel.info)) {
+            info(Strings.format(format, arg1));
+        }
+    }
+    
+    /**
+     * 记录信息日志，消息中的@依次替换为参数
+     * @param format 日志格式
+     * @param arg1 参数1
+     * @param arg2 参数2
+     */
+    public static void info(String format, Object arg1, Object arg2) {
+        if (isEnabled(LogLevel.info)) {
+            info(Strings.format(format, arg1, arg2));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+package logicExtend;
+
+import arc.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * 异步日志文件写入器
+ * 游戏线程只把日志放入有界环形缓冲区，由后台线程批量写入文件并在每批结束时flush一次；
+ * 缓冲区满时丢弃新日志并计数，日志文件超过大小上限时滚动
+ */
+public class LELogAppender {
+
+    /** 环形缓冲区容量 */
+    public static int bufferSize = 4096;
+    /** 单个日志文件的大小上限（字节） */
+    public static long maxFileSize = 4L * 1024 * 1024;
+    /** 保留的历史日志文件数量 */
+    public static int maxFiles = 3;
+    /** 没有新日志时后台线程的最长等待时间（毫秒） */
+    public static long flushInterval = 250;
+
+    /** 日志文件 */
+    public final File file;
+
+    /** 因缓冲区满被丢弃的日志数量 */
+    public volatile long dropped = 0;
+    /** 已写入的日志数量 */
+    public volatile long written = 0;
+
+    private final long[] times;
+    private final String[] messages;
+    private int head = 0, size = 0;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private Writer writer;
+    private long fileLength;
+
+    public LELogAppender(File dir, String fileName) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建日志目录: " + dir.getAbsolutePath());
+        }
+        file = new File(dir, fileName);
+        times = new long[bufferSize];
+        messages = new String[bufferSize];
+        open();
+
+        thread = new Thread(this::loop, "LogicExtend-LogWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** 放入一条日志，不会阻塞；缓冲区满时丢弃并返回false */
+    public boolean append(String message) {
+        long time = System.currentTimeMillis();
+        synchronized (this) {
+            if (size == messages.length) {
+                dropped++;
+                return false;
+            }
+            int index = (head + size) % messages.length;
+            times[index] = time;
+            messages[index] = message;
+            size++;
+            if (size == 1) notify();
+        }
+        return true;
+    }
+
+    /** 停止后台线程，写完缓冲区中剩余的日志后关闭文件 */
+    public void close() {
+        running = false;
+        synchronized (this) {
+            notify();
+        }
+        try {
+            thread.join(2000);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop() {
+        // 时间格式化只在后台线程中进行
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        Date date = new Date();
+        long[] batchTimes = new long[messages.length];
+        String[] batch = new String[messages.length];
+
+        while (true) {
+            int count;
+            synchronized (this) {
+                if (size == 0 && running) {
+                    try {
+                        wait(flushInterval);
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+                count = size;
+                for (int i = 0; i < count; i++) {
+                    int index = (head + i) % messages.length;
+                    batchTimes[i] = times[index];
+                    batch[i] = messages[index];
+                    messages[index] = null;
+                }
+                head = (head + count) % messages.length;
+                size = 0;
+            }
+
+            if (count > 0) {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        date.setTime(batchTimes[i]);
+                        String line = "[" + format.format(date) + "] [嵌套逻辑] " + batch[i] + "\n";
+                        writer.write(line);
+                        fileLength += utf8Length(line);
+                        batch[i] = null;
+                    }
+                    writer.flush();
+                    written += count;
+                    if (fileLength > maxFileSize) {
+                        rotate();
+                    }
+                } catch (IOException e) {
+                    Log.errTag("嵌套逻辑", "写入日志文件时发生错误: " + e.getMessage());
+                }
+            } else if (!running) {
+                break;
+            }
+        }
+
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** 字符串按UTF-8编码后的字节数，中文日志每个字符占3字节，按字符数计算会使滚动明显滞后 */
+    static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private void open() throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        fileLength = file.length();
+    }
+
+    /** 滚动日志文件：name.log -> name.1.log -> name.2.log ... */
+    private void rotate() throws IOException {
+        writer.close();
+        String base = file.getName().endsWith(".log") ? file.getName().substring(0, file.getName().length() - 4) : file.getName();
+        File dir = file.getParentFile();
+        File oldest = new File(dir, base + "." + maxFiles + ".log");
+        if (oldest.exists()) oldest.delete();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File from = new File(dir, base + "." + i + ".log");
+            if (from.exists()) from.renameTo(new File(dir, base + "." + (i + 1) + ".log"));
+        }
+        if (maxFiles > 0) {
+            file.renameTo(new File(dir, base + ".1.log"));
+        } else {
+            file.delete();
+        }
+        open();
+    }
+}
@@ -12,6 +12,9 @@ public class LEMain extends Mod {
 
     @Override
     public void init() {
+        // 物品转移合批发送（需要在netClient创建之后注册）
+        LTransferBatcher.init();
+        
         // 添加设置界面
         addSettings();
     }
@@ -28,9 +31,31 @@ public class LEMain extends Mod {
                 LELog.initLogFile();
             });
             
+            // debug/info日志同时输出到控制台（同步写入，只在排查问题时开启）
+            settings.checkPref(LELog.CONSOLE_SETTING, false, value -> LELog.consoleEcho = value);
+            
+            // 日志目录，留空时使用Mindustry数据目录下的logicextend-logs；输入时只保存设置，关闭设置界面时生效
+            settings.textPref(LELog.LOG_DIR_SETTING, "", value -> {});
+            
+            // 并发模式：从工作线程驱动逻辑的服务器才需要开启
+            settings.checkPref("lnestedlogic-concurrent", false, value -> LNestedLogic.concurrent = value);
+            
+            // 无CD单位控制的物品/载荷操作预算（每tick），0为不限制
+            settings.sliderPref(LTransferBudget.TEAM_SETTING, 0, 0, 200, 5, value -> {
+                LTransferBudget.teamRate = value;
+                return value == 0 ? "∞" : value + "/tick";
+            });
+            settings.sliderPref(LTransferBudget.PROCESSOR_SETTING, 0, 0, 50, 1, value -> {
+                LTransferBudget.processorRate = value;
+                return value == 0 ? "∞" : value + "/tick";
+            });
+            
             settingsTable.add(settings);
         };
         
+        // 关闭设置界面时应用日志目录的修改
+        mindustry.Vars.ui.settings.hidden(LELog::applyLogDirectory);
+        
         // 添加设置类别
         mindustry.Vars.ui.settings.getCategories().add(
             new SettingsMenuDialog.SettingsCategory(
@@ -49,14 +74,40 @@ public class LEMain extends Mod {
 
         // 注册嵌套逻辑语句
         LNestedLogic.LNestedLogicStatement.create();
+        // 注册嵌套逻辑的生命周期事件
+        LNestedLogic.init();
         // 注册单位绑定组指令
         LUnitBindGroupUI.UnitBindGroupStatement.create();
+        // 注册单位池的维护事件
+        LUnitBindGroupRUN.init();
         
         // 注册快速单位控制指令
         FastUnitControl.create();
         
+        // 注册单位组批量控制指令
+        LUnitGroupControl.create();
+        
+        // 注册单位池批量物流分配指令
+        LUnitLogistics.create();
+        
+        // 注册存档数据块，保存单位池和嵌套逻辑状态
+        LESaveChunk.init();
+        
+        // 注册持久协助链接的同步事件
+        LAssistLinks.init();
+        
+        // 注册物品位置索引的维护事件
+        LItemIndex.init();
+        
+        // 注册无CD单位控制的转移预算
+        LTransferBudget.init();
+        
+        // 初始化栈存储的并发模式
+        LNestedLogic.concurrent = Core.settings.getBool("lnestedlogic-concurrent", false);
+        
         // 初始化debugLog值
         LELog.debugLog = Core.settings.getBool("lnestedlogic-debug-log") ? 1 : 0;
+        LELog.consoleEcho = Core.settings.getBool(LELog.CONSOLE_SETTING, false);
         // 初始化日志文件
         LELog.initLogFile();
     }
@@ -0,0 +1,355 @@
+package logicExtend;
+
+import arc.Events;
+import arc.struct.IntSeq;
+import arc.struct.ObjectMap;
+import arc.struct.Seq;
+import mindustry.ctype.ContentType;
+import mindustry.ctype.MappableContent;
+import mindustry.game.EventType;
+import mindustry.game.Team;
+import mindustry.gen.Building;
+import mindustry.gen.Groups;
+import mindustry.gen.Unit;
+import mindustry.io.SaveFileReader;
+import mindustry.io.SaveVersion;
+import mindustry.logic.LExecutor;
+import mindustry.logic.LVar;
+import mindustry.world.blocks.logic.LogicBlock;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static mindustry.Vars.content;
+import static mindustry.Vars.world;
+
+/**
+ * 存档自定义数据块，保存单位池、嵌套逻辑的栈和嵌套执行器的变量
+ * 栈在读取数据块时直接恢复（此时单位和建筑已经读取完毕）；
+ * 单位池和嵌套执行器变量解析到待恢复表中，在对应的执行器第一次运行时才恢复，
+ * 待恢复表在世界重置时清空，不会带到之后加载的其他世界
+ */
+public class LESaveChunk implements SaveFileReader.CustomChunk {
+
+    /** 数据块名称 */
+    public static final String NAME = "logicextend";
+    /** 数据格式版本，2起字符串改为长度前缀的UTF-8字节，不再受writeUTF的64KB限制 */
+    private static final int VERSION = 2;
+    /** 正在读取的数据块版本 */
+    private static int readVersion = VERSION;
+
+    // 值的类型标记
+    private static final byte TAG_NUM = 0, TAG_NULL = 1, TAG_STRING = 2, TAG_BOOL = 3,
+        TAG_CONTENT = 4, TAG_BUILDING = 5, TAG_UNIT = 6, TAG_TEAM = 7;
+    // 单位池的key类型
+    private static final byte POOL_PROCESSOR = 0, POOL_NESTED = 1, POOL_GROUP = 2;
+
+    /** 已保存的单位池 */
+    public static class SavedPool {
+        public short type;
+        public byte mode, order;
+        public float nearX, nearY;
+        public int currentIndex;
+        public IntSeq units = new IntSeq();
+    }
+
+    /** 已保存的栈元素 */
+    private static class SavedSlot {
+        int index;
+        boolean isobj;
+        double num;
+        Object obj;
+        long time;
+    }
+
+    /** 读取中的栈：栈名 -> 按push顺序排列的元素 */
+    private static final ObjectMap<String, Seq<SavedSlot>> pendingStacks = new ObjectMap<>();
+    /** 待恢复的嵌套执行器变量：uniqueId -> 变量名 -> 值（数值以Double保存） */
+    private static final ObjectMap<String, ObjectMap<String, Object>> pendingVars = new ObjectMap<>();
+    /** 待恢复的单位池：key -> 单位池 */
+    private static final ObjectMap<String, SavedPool> pendingPools = new ObjectMap<>();
+    /** 注册数据块和清理事件 */
+    public static void init() {
+        SaveVersion.addCustomChunk(NAME, new LESaveChunk());
+        // 读取存档/加载地图前都会重置世界：丢弃上一个世界遗留的待恢复数据。
+        // 不能使用WorldLoadEvent，它在读取地图时触发，早于实体和自定义数据块的读取
+        Events.on(EventType.ResetEvent.class, e -> clearPending());
+    }
+
+    /** 清空待恢复数据 */
+    public static void clearPending() {
+        pendingStacks.clear();
+        pendingVars.clear();
+        pendingPools.clear();
+    }
+
+    /** 逻辑只在服务端/单机运行，不随世界数据发送给客户端 */
+    @Override
+    public boolean writeNet() {
+        return false;
+    }
+
+    @Override
+    public void write(DataOutput stream) throws IOException {
+        stream.writeByte(VERSION);
+
+        // 1. 栈
+        Seq<LNestedLogic.CallStack> stacks = LNestedLogic.allStacks();
+        stream.writeInt(stacks.size);
+        for (LNestedLogic.CallStack stack : stacks) {
+            writeString(stream, stack.name);
+            stream.writeInt(stack.size);
+            for (int slot = stack.head; slot != -1; slot = stack.next[slot]) {
+                stream.writeInt(stack.indices[slot]);
+                stream.writeLong(stack.pushTimes[slot]);
+                writeValue(stream, stack.isobj[slot], stack.nums[slot], stack.objs[slot]);
+            }
+        }
+
+        // 2. 嵌套执行器变量
+        ObjectMap<String, LExecutor> nested = LNestedLogic.executorCache.snapshot();
+        stream.writeInt(nested.size);
+        for (ObjectMap.Entry<String, LExecutor> entry : nested) {
+            writeString(stream, entry.key);
+            LVar[] vars = entry.value.vars;
+            int count = 0;
+            for (LVar var : vars) if (persistent(var)) count++;
+            stream.writeInt(count);
+            for (LVar var : vars) {
+                if (!persistent(var)) continue;
+                writeString(stream, var.name);
+                writeValue(stream, var.isobj, var.numval, var.objval);
+            }
+        }
+
+        // 3. 单位池
+        Seq<String> keys = new Seq<>();
+        Seq<LUnitBindGroupRUN.UnitPool> pools = new Seq<>();
+        for (ObjectMap.Entry<LExecutor, LUnitBindGroupRUN.UnitPool> entry : LUnitBindGroupRUN.executorPools) {
+            LExecutor exec = entry.key;
+            String key = null;
+            if (exec.build instanceof LogicBlock.LogicBuild build && build.executor == exec) {
+                key = POOL_PROCESSOR + ":" + build.pos();
+            } else {
+                String uid = nested.findKey(exec, true);
+                if (uid != null) key = POOL_NESTED + ":" + uid;
+            }
+            if (key != null && entry.value.type != null && !entry.value.units.isEmpty()) {
+                keys.add(key);
+                pools.add(entry.value);
+            }
+        }
+        for (ObjectMap<String, LUnitBindGroupRUN.UnitPool> groups : LUnitBindGroupRUN.sharedGroups.values()) {
+            for (LUnitBindGroupRUN.UnitPool pool : groups.values()) {
+                if (pool.type != null && !pool.units.isEmpty()) {
+                    keys.add(groupKey(pool.team, pool.name));
+                    pools.add(pool);
+                }
+            }
+        }
+        stream.writeInt(pools.size);
+        for (int i = 0; i < pools.size; i++) {
+            LUnitBindGroupRUN.UnitPool pool = pools.get(i);
+            writeString(stream, keys.get(i));
+            stream.writeShort(pool.type.id);
+            stream.writeByte(pool.mode);
+            stream.writeByte(pool.order.ordinal());
+            stream.writeFloat(pool.nearX);
+            stream.writeFloat(pool.nearY);
+            stream.writeInt(pool.currentIndex);
+            stream.writeInt(pool.units.size);
+            for (Unit unit : pool.units) stream.writeInt(unit.id());
+        }
+    }
+
+    @Override
+    public void read(DataInput stream) throws IOException {
+        clearPending();
+
+        int version = stream.readUnsignedByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unknown logicextend chunk version: " + version);
+        }
+        readVersion = version;
+
+        int stackCount = stream.readInt();
+        for (int i = 0; i < stackCount; i++) {
+            String name = readString(stream);
+            int size = stream.readInt();
+            Seq<SavedSlot> slots = new Seq<>(size);
+            for (int j = 0; j < size; j++) {
+                SavedSlot slot = new SavedSlot();
+                slot.index = stream.readInt();
+                slot.time = stream.readLong();
+                Object value = readValue(stream);
+                if (value instanceof Double d) {
+                    slot.num = d;
+                } else {
+                    slot.isobj = true;
+                    slot.obj = value;
+                }
+                slots.add(slot);
+            }
+            pendingStacks.put(name, slots);
+        }
+
+        int execCount = stream.readInt();
+        for (int i = 0; i < execCount; i++) {
+            String uid = readString(stream);
+            int count = stream.readInt();
+            ObjectMap<String, Object> vars = new ObjectMap<>(count);
+            for (int j = 0; j < count; j++) {
+                String name = readString(stream);
+                vars.put(name, readValue(stream));
+            }
+            pendingVars.put(uid, vars);
+        }
+
+        int poolCount = stream.readInt();
+        for (int i = 0; i < poolCount; i++) {
+            String key = readString(stream);
+            SavedPool pool = new SavedPool();
+            pool.type = stream.readShort();
+            pool.mode = stream.readByte();
+            pool.order = stream.readByte();
+            pool.nearX = stream.readFloat();
+            pool.nearY = stream.readFloat();
+            pool.currentIndex = stream.readInt();
+            int units = stream.readInt();
+            pool.units.ensureCapacity(units);
+            for (int j = 0; j < units; j++) pool.units.add(stream.readInt());
+            pendingPools.put(key, pool);
+        }
+
+        // 自定义数据块在实体之后读取，单位和建筑引用此时已经可以解析
+        restoreStacks();
+        pendingStacks.clear();
+
+        if (LELog.enabled()) LELog.info("读取存档数据：@ 个栈，@ 个嵌套执行器，@ 个单位池", stackCount, execCount, poolCount);
+    }
+
+    /** 嵌套执行器第一次创建时恢复其变量和单位池 */
+    public static void restoreNested(String uid, LExecutor exec) {
+        if (pendingVars.isEmpty() && pendingPools.isEmpty()) return;
+        ObjectMap<String, Object> vars = pendingVars.remove(uid);
+        if (vars != null) {
+            for (LVar var : exec.vars) {
+                if (!persistent(var) || !vars.containsKey(var.name)) continue;
+                Object value = vars.get(var.name);
+                if (value instanceof Double d) {
+                    var.setnum(d);
+                } else {
+                    var.setobj(value);
+                }
+            }
+        }
+        SavedPool pool = pendingPools.remove(POOL_NESTED + ":" + uid);
+        if (pool != null) LUnitBindGroupRUN.restorePool(exec, pool);
+    }
+
+    /** 处理器执行器第一次创建单位池时取出已保存的单位池，没有时返回null */
+    public static SavedPool takeProcessorPool(LExecutor exec) {
+        if (pendingPools.isEmpty()) return null;
+        if (exec.build instanceof LogicBlock.LogicBuild build && build.executor == exec) {
+            return pendingPools.remove(POOL_PROCESSOR + ":" + build.pos());
+        }
+        return null;
+    }
+
+    /** 共享单位组第一次创建时取出已保存的单位池，没有时返回null */
+    public static SavedPool takeGroupPool(Team team, String name) {
+        if (pendingPools.isEmpty()) return null;
+        return pendingPools.remove(groupKey(team, name));
+    }
+
+    /** 恢复读取到的栈，并登记到超时回收时间轮 */
+    private static void restoreStacks() {
+        for (ObjectMap.Entry<String, Seq<SavedSlot>> entry : pendingStacks) {
+            if (entry.value.isEmpty()) continue;
+            LNestedLogic.CallStack stack = LNestedLogic.getStack(entry.key);
+            for (SavedSlot slot : entry.value) {
+                if (slot.isobj) {
+                    stack.put(slot.index, slot.obj, slot.time);
+                } else {
+                    stack.put(slot.index, slot.num, slot.time);
+                }
+            }
+            LNestedStackWheel.schedule(stack, stack.oldest() + LNestedStackWheel.timeout);
+        }
+    }
+
+    private static String groupKey(Team team, String name) {
+        return POOL_GROUP + ":" + team.id + ":" + name;
+    }
+
+    /** 需要保存的变量：非常量、非内置变量 */
+    private static boolean persistent(LVar var) {
+        return var != null && !var.constant && var.name != null && !var.name.startsWith("@");
+    }
+
+    /** 写入字符串：长度前缀的UTF-8字节，stringmerge等拼出的超过64KB的字符串也能保存 */
+    private static void writeString(DataOutput stream, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+    }
+
+    /** 读取字符串，版本1的数据块使用readUTF格式 */
+    private static String readString(DataInput stream) throws IOException {
+        if (readVersion < 2) return stream.readUTF();
+        int length = stream.readInt();
+        if (length < 0) throw new IOException("Invalid string length: " + length);
+        byte[] bytes = new byte[length];
+        stream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeValue(DataOutput stream, boolean isobj, double num, Object obj) throws IOException {
+        if (!isobj) {
+            stream.writeByte(TAG_NUM);
+            stream.writeDouble(num);
+        } else if (obj instanceof String s) {
+            stream.writeByte(TAG_STRING);
+            writeString(stream, s);
+        } else if (obj instanceof Boolean b) {
+            stream.writeByte(TAG_BOOL);
+            stream.writeBoolean(b);
+        } else if (obj instanceof MappableContent c) {
+            stream.writeByte(TAG_CONTENT);
+            stream.writeByte(c.getContentType().ordinal());
+            stream.writeShort(c.id);
+        } else if (obj instanceof Building b) {
+            stream.writeByte(TAG_BUILDING);
+            stream.writeInt(b.pos());
+        } else if (obj instanceof Unit u) {
+            stream.writeByte(TAG_UNIT);
+            stream.writeInt(u.id());
+        } else if (obj instanceof Team t) {
+            stream.writeByte(TAG_TEAM);
+            stream.writeByte(t.id);
+        } else {
+            // 无法保存的对象按null处理
+            stream.writeByte(TAG_NULL);
+        }
+    }
+
+    /** 读取值，数值返回Double，其余返回对象（建筑和单位在读取时解析，数据块在实体之后读取） */
+    private static Object readValue(DataInput stream) throws IOException {
+        byte tag = stream.readByte();
+        switch (tag) {
+            case TAG_NUM: return stream.readDouble();
+            case TAG_STRING: return readString(stream);
+            case TAG_BOOL: return stream.readBoolean();
+            case TAG_CONTENT: {
+                ContentType type = ContentType.all[stream.readUnsignedByte()];
+                return content.getByID(type, stream.readShort());
+            }
+            case TAG_BUILDING: return world.build(stream.readInt());
+            case TAG_UNIT: return Groups.unit.getByID(stream.readInt());
+            case TAG_TEAM: return Team.get(stream.readUnsignedByte());
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package logicExtend;
+
+import arc.Events;
+import arc.struct.IntMap;
+import arc.struct.IntSet;
+import arc.struct.Seq;
+import mindustry.core.World;
+import mindustry.game.EventType;
+import mindustry.game.Team;
+import mindustry.gen.Building;
+import mindustry.gen.Groups;
+import mindustry.type.Item;
+
+import static mindustry.Vars.tilesize;
+
+/**
+ * 物品位置索引，按队伍和物品记录可能存有该物品、且允许取物的建筑（仓库、核心、工厂等，不含传送带）
+ * 建筑建成时加入索引，并每tick增量扫描少量建筑补充新存入物品的建筑；
+ * 建筑被拆除或物品取空时不立即移除，查询时检查实际数量，不满足的直接丢弃。
+ * 每个队伍+物品的建筑按所在区块（16×16格）分组，最近查询从参考点所在区块按环向外搜索，
+ * 找到的建筑已不可能被更外层的区块超过时停止，不需要遍历全部建筑
+ */
+public class LItemIndex {
+
+    /** 区块边长（格）的位移，区块为16×16格 */
+    private static final int CELL_SHIFT = 4;
+    /** 每tick增量扫描的建筑数 */
+    public static int sweepPerTick = 32;
+
+    /** 单个队伍+物品的来源建筑 */
+    private static class Bucket {
+        /** 区块 -> 区块内的建筑 */
+        final IntMap<Seq<Building>> cells = new IntMap<>();
+        final IntSet positions = new IntSet();
+        int size = 0;
+        /** 有建筑的区块范围，只增不减，用于限制搜索的环数 */
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        // 首次查询时从队伍建筑列表中完整扫描一次
+        boolean seeded = false;
+
+        void add(Building build) {
+            if (!positions.add(build.pos())) return;
+            int cx = build.tile.x >> CELL_SHIFT, cy = build.tile.y >> CELL_SHIFT;
+            Seq<Building> cell = cells.get(cell(cx, cy));
+            if (cell == null) {
+                cell = new Seq<>(false, 4);
+                cells.put(cell(cx, cy), cell);
+            }
+            cell.add(build);
+            size++;
+            minX = Math.min(minX, cx);
+            minY = Math.min(minY, cy);
+            maxX = Math.max(maxX, cx);
+            maxY = Math.max(maxY, cy);
+        }
+
+        /** 移除区块中第i个建筑（无序移除） */
+        void remove(Seq<Building> cell, int i) {
+            positions.remove(cell.get(i).pos());
+            cell.remove(i);
+            size--;
+        }
+    }
+
+    /** (队伍id, 物品id) -> 来源建筑 */
+    private static final IntMap<Bucket> buckets = new IntMap<>();
+    /** 增量扫描的位置 */
+    private static int sweepCursor = 0;
+
+    /** 注册维护事件 */
+    public static void init() {
+        Events.on(EventType.BlockBuildEndEvent.class, e -> {
+            if (!e.breaking && e.tile.build != null) offer(e.tile.build);
+        });
+        Events.on(EventType.ResetEvent.class, e -> clear());
+        Events.run(EventType.Trigger.update, LItemIndex::sweep);
+    }
+
+    /** 建筑是否可以作为取物来源 */
+    public static boolean isSource(Building build) {
+        return build != null && build.isValid() && build.items != null && build.block.unloadable;
+    }
+
+    /** 将建筑加入其存有的各物品的索引 */
+    public static synchronized void offer(Building build) {
+        if (buckets.isEmpty() || !isSource(build)) return;
+        build.items.each((item, amount) -> {
+            Bucket bucket = buckets.get(key(build.team, item));
+            // 还未被查询过的物品不需要维护，首次查询时会完整扫描
+            if (bucket != null) bucket.add(build);
+        });
+    }
+
+    /**
+     * 查找距离(x, y)最近、至少存有minAmount个物品的来源建筑，没有时返回null
+     * 查询时会移除搜索到的已失效或不再存有物品的建筑
+     */
+    public static synchronized Building nearest(Team team, Item item, float x, float y, int minAmount) {
+        Bucket bucket = bucket(team, item);
+        if (bucket.size == 0) return null;
+        int required = Math.max(minAmount, 1);
+        int cx = World.toTile(x) >> CELL_SHIFT, cy = World.toTile(y) >> CELL_SHIFT;
+        int rings = Math.max(Math.max(cx - bucket.minX, bucket.maxX - cx), Math.max(cy - bucket.minY, bucket.maxY - cy));
+        float cellSize = (1 << CELL_SHIFT) * tilesize;
+
+        Building result = null;
+        float best = Float.MAX_VALUE;
+        for (int r = 0; r <= rings; r++) {
+            for (int dx = -r; dx <= r; dx++) {
+                // 环的上下两行取全部，中间各行只取左右两端
+                int step = dx == -r || dx == r ? 1 : Math.max(2 * r, 1);
+                for (int dy = -r; dy <= r; dy += step) {
+                    Seq<Building> cell = bucket.cells.get(cell(cx + dx, cy + dy));
+                    if (cell == null) continue;
+                    for (int i = 0; i < cell.size; ) {
+                        Building build = cell.get(i);
+                        if (!isSource(build) || build.team != team) {
+                            bucket.remove(cell, i);
+                            continue;
+                        }
+                        // 先检查数量，不满足的不计算距离
+                        int amount = build.items.get(item);
+                        if (amount <= 0) {
+                            bucket.remove(cell, i);
+                            continue;
+                        }
+                        if (amount >= required) {
+                            float dst = build.dst2(x, y);
+                            if (dst < best) {
+                                best = dst;
+                                result = build;
+                            }
+                        }
+                        i++;
+                    }
+                }
+            }
+            // 第r+1环的建筑到参考点的距离至少为r个区块边长
+            float reach = r * cellSize;
+            if (result != null && best <= reach * reach) break;
+        }
+        return result;
+    }
+
+    /** 将队伍中当前存有该物品的来源建筑加入out */
+    public static synchronized void collect(Team team, Item item, Seq<Building> out) {
+        Bucket bucket = bucket(team, item);
+        for (Seq<Building> cell : bucket.cells.values()) {
+            for (int i = 0; i < cell.size; ) {
+                Building build = cell.get(i);
+                if (!isSource(build) || build.team != team || build.items.get(item) <= 0) {
+                    bucket.remove(cell, i);
+                    continue;
+                }
+                out.add(build);
+                i++;
+            }
+        }
+    }
+
+    /** 当前索引中的建筑数（含尚未检查的失效建筑） */
+    public static synchronized int size(Team team, Item item) {
+        Bucket bucket = buckets.get(key(team, item));
+        return bucket == null ? 0 : bucket.size;
+    }
+
+    /** 清空索引 */
+    public static synchronized void clear() {
+        buckets.clear();
+        sweepCursor = 0;
+    }
+
+    private static Bucket bucket(Team team, Item item) {
+        int key = key(team, item);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(key, bucket);
+        }
+        if (!bucket.seeded) {
+            bucket.seeded = true;
+            for (Building build : team.data().buildings) {
+                if (isSource(build) && build.items.has(item)) bucket.add(build);
+            }
+        }
+        return bucket;
+    }
+
+    /** 每tick扫描少量建筑，补充后来才存入物品的建筑 */
+    private static synchronized void sweep() {
+        if (buckets.isEmpty()) return;
+        int total = Groups.build.size();
+        if (total == 0) return;
+        int count = Math.min(sweepPerTick, total);
+        for (int i = 0; i < count; i++) {
+            if (sweepCursor >= total) sweepCursor = 0;
+            offer(Groups.build.index(sweepCursor++));
+        }
+    }
+
+    private static int cell(int cx, int cy) {
+        return (cy << 16) | (cx & 0xffff);
+    }
+
+    private static int key(Team team, Item item) {
+        return (team.id << 16) | item.id;
+    }
+}
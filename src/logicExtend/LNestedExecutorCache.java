@@ -0,0 +1,176 @@
+package logicExtend;
+
+import arc.struct.ObjectMap;
+import arc.struct.ObjectSet;
+import mindustry.gen.Building;
+import mindustry.logic.LExecutor;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 嵌套执行器缓存，key为call指令的uniqueId
+ * 条目与所属处理器的生命周期绑定：处理器被拆除/摧毁或世界重新加载时移除，
+ * 并有容量上限，超出时优先淘汰所属处理器或call指令已失效的条目，其次淘汰最久未使用的条目。
+ * 只有执行器确实被丢弃（处理器移除、被同一调用点替换、call指令已失效）时才释放其单位池；
+ * 按LRU淘汰只移除缓存条目，调用点仍持有执行器，下次执行时会重新存入
+ */
+public class LNestedExecutorCache {
+
+    /** 缓存容量上限 */
+    public static int capacity = 4096;
+
+    /** 累计被淘汰的条目数 */
+    public long evicted = 0;
+
+    /** 缓存条目 */
+    private static class Entry {
+        LExecutor exec;
+        Building owner;
+        /** 持有执行器的call指令，弱引用：处理器重新加载代码后旧指令被回收，执行器随之失效 */
+        WeakReference<LExecutor.LInstruction> call;
+
+        boolean discarded() {
+            return (owner != null && !owner.isValid()) || (call != null && call.get() == null);
+        }
+    }
+
+    /** uniqueId -> 条目，按访问顺序排列 */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    /** 所属处理器 -> 该处理器持有的uniqueId */
+    private final ObjectMap<Building, ObjectSet<String>> byOwner = new ObjectMap<>();
+
+    public synchronized boolean containsKey(String uniqueId) {
+        return entries.containsKey(uniqueId);
+    }
+
+    public synchronized LExecutor get(String uniqueId) {
+        Entry entry = entries.get(uniqueId);
+        return entry == null ? null : entry.exec;
+    }
+
+    /** 存入执行器，所属处理器取执行器的build，call为持有该执行器的指令 */
+    public synchronized void put(String uniqueId, LExecutor exec, LExecutor.LInstruction call) {
+        Building owner = exec.build;
+        Entry entry = entries.get(uniqueId);
+        if (entry != null) {
+            if (entry.exec == exec && entry.owner == owner) return;
+            if (entry.exec != exec) {
+                // 嵌套程序的语句是共享的，同一uniqueId可能同时被多个调用点使用；
+                // 只有旧执行器的调用点已失效或就是当前调用点时才释放，否则旧执行器仍在运行
+                LExecutor.LInstruction previous = entry.call == null ? null : entry.call.get();
+                if (previous == null || previous == call) {
+                    LUnitBindGroupRUN.releaseExecutor(entry.exec);
+                }
+            }
+            unlinkOwner(uniqueId, entry.owner);
+        } else {
+            entry = new Entry();
+            entries.put(uniqueId, entry);
+        }
+        if (entry.exec != exec || entry.call == null || entry.call.get() != call) {
+            entry.call = new WeakReference<>(call);
+        }
+        entry.exec = exec;
+        entry.owner = owner;
+        if (owner != null) {
+            byOwner.get(owner, ObjectSet::new).add(uniqueId);
+        }
+
+        if (entries.size() > capacity) {
+            trim();
+        }
+    }
+
+    public synchronized LExecutor remove(String uniqueId) {
+        Entry entry = entries.remove(uniqueId);
+        if (entry == null) return null;
+        unlinkOwner(uniqueId, entry.owner);
+        LUnitBindGroupRUN.releaseExecutor(entry.exec);
+        return entry.exec;
+    }
+
+    /** 移除指定处理器持有的所有执行器 */
+    public synchronized void evictOwner(Building owner) {
+        ObjectSet<String> ids = byOwner.remove(owner);
+        if (ids == null) return;
+        for (String id : ids) {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                LUnitBindGroupRUN.releaseExecutor(entry.exec);
+                evicted++;
+            }
+        }
+        if (LELog.enabled()) LELog.debug("处理器移除，淘汰 " + ids.size + " 个嵌套执行器");
+    }
+
+    /** 清空缓存（世界重新加载时调用） */
+    public synchronized void clear() {
+        evicted += entries.size();
+        entries.clear();
+        byOwner.clear();
+    }
+
+    /** 所有条目的快照：uniqueId -> 执行器 */
+    public synchronized ObjectMap<String, LExecutor> snapshot() {
+        ObjectMap<String, LExecutor> result = new ObjectMap<>(entries.size());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            result.put(e.getKey(), e.getValue().exec);
+        }
+        return result;
+    }
+
+    /** 当前存活的条目数 */
+    public synchronized int live() {
+        return entries.size();
+    }
+
+    /** 缓存统计信息 */
+    public synchronized String stats() {
+        return "存活: " + entries.size() + "/" + capacity + "，已淘汰: " + evicted;
+    }
+
+    /** 移除所属处理器或call指令已失效的条目，并释放其单位池（每隔一段时间调用） */
+    public synchronized void sweepDiscarded() {
+        removeDiscarded();
+    }
+
+    private void removeDiscarded() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            Entry entry = e.getValue();
+            if (entry.discarded()) {
+                it.remove();
+                unlinkOwner(e.getKey(), entry.owner);
+                LUnitBindGroupRUN.releaseExecutor(entry.exec);
+                evicted++;
+            }
+        }
+    }
+
+    /** 超出容量时淘汰：先移除已失效的条目，仍超出则按LRU淘汰，多淘汰1/8以分摊开销 */
+    private void trim() {
+        removeDiscarded();
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > capacity - capacity / 8 && it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            it.remove();
+            unlinkOwner(e.getKey(), e.getValue().owner);
+            // 调用点仍持有执行器并会在下次执行时重新存入，这里只移除缓存条目，不释放单位池
+            evicted++;
+        }
+    }
+
+    private void unlinkOwner(String uniqueId, Building owner) {
+        if (owner == null) return;
+        ObjectSet<String> ids = byOwner.get(owner);
+        if (ids != null) {
+            ids.remove(uniqueId);
+            if (ids.isEmpty()) byOwner.remove(owner);
+        }
+    }
+}
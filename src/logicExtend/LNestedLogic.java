@@ -1,12 +1,14 @@
 package logicExtend;
 
+import arc.Events;
 import arc.struct.Seq;
 import arc.scene.ui.layout.Table;
-import arc.util.Timer;
+import mindustry.game.EventType;
 import mindustry.gen.Building;
 import mindustry.gen.LogicIO;
 import mindustry.logic.*;
 import mindustry.ui.Styles;
+import mindustry.world.blocks.logic.LogicBlock;
 
 import static arc.Core.*;
 import static mindustry.logic.LCanvas.tooltip;
@@ -31,140 +33,370 @@ public class LNestedLogic {
         }
     }
     
-    /** 调用栈元素 */
-    public static class CallStackElement {
-        public String varName;
-        public Object varValue;
-        public int index = 0; // 栈的索引，默认0
-        public String stackName = "default"; // 栈名称，默认"default"
-        public long lastPushTime; // 最后push时间，用于自动回收
+    /** call分支的执行模式 */
+    public enum CallMode {
+        /** 在一条父指令内执行完整个嵌套逻辑（最多maxInstructions条） */
+        full,
+        /** 分片执行：每tick最多执行父处理器ipt条指令，未执行完则下一tick从断点继续 */
+        sliced
     }
     
-    /** 全局栈存储，key为栈名称，value为该栈的元素列表 */
-    public static final arc.struct.ObjectMap<String, Seq<CallStackElement>> stacks = new arc.struct.ObjectMap<>();
+    /**
+     * 栈句柄，栈名称只在创建时解析一次，push/pop指令直接持有句柄
+     * 元素按索引存放在槽位中：index -> 槽位通过开放寻址的IntIntMap查找，
+     * 数值与对象分别存放在double[]和Object[]中，压入数值不产生装箱和分配；
+     * 槽位按最后push的tick串成双向链表，表头即最早超时的元素，供时间轮回收
+     */
+    public static class CallStack {
+        /** 栈名称 */
+        public final String name;
+        /** 栈锁，仅在并发模式下使用；锁随栈句柄一起回收，不会残留 */
+        public final java.util.concurrent.locks.Lock lock = new java.util.concurrent.locks.ReentrantLock();
+        /** 栈被自动回收移除后置为true，持有该句柄的指令需要重新获取 */
+        public volatile boolean removed = false;
+        
+        /** index -> 槽位 */
+        private final arc.struct.IntIntMap slots = new arc.struct.IntIntMap();
+        /** 槽位对应的栈索引 */
+        int[] indices = new int[8];
+        /** 槽位是否存放对象 */
+        boolean[] isobj = new boolean[8];
+        /** 槽位中的数值 */
+        double[] nums = new double[8];
+        /** 槽位中的对象 */
+        Object[] objs = new Object[8];
+        /** 槽位最后push的游戏tick，用于自动回收 */
+        long[] pushTimes = new long[8];
+        /** 按push时间排序的双向链表 */
+        int[] prev = new int[8], next = new int[8];
+        int head = -1, tail = -1;
+        /** 在时间轮中登记的到期tick，未登记时为-1，受时间轮锁保护 */
+        long wheelDeadline = -1;
+        /** 槽位是否在使用 */
+        boolean[] used = new boolean[8];
+        /** 已使用过的最高槽位+1 */
+        int top = 0;
+        /** 空闲槽位列表 */
+        private int[] free = new int[8];
+        private int freeCount = 0;
+        /** 元素数量 */
+        public int size = 0;
+        
+        CallStack(String name) {
+            this.name = name;
+        }
+        
+        /** 索引对应的槽位，不存在时返回-1 */
+        public int slot(int index) {
+            return slots.get(index, -1);
+        }
+        
+        public boolean isEmpty() {
+            return size == 0;
+        }
+        
+        /** 压入数值 */
+        public void put(int index, double value, long time) {
+            int slot = obtain(index);
+            isobj[slot] = false;
+            nums[slot] = value;
+            objs[slot] = null;
+            pushTimes[slot] = time;
+        }
+        
+        /** 压入对象 */
+        public void put(int index, Object value, long time) {
+            int slot = obtain(index);
+            isobj[slot] = true;
+            objs[slot] = value;
+            pushTimes[slot] = time;
+        }
+        
+        /** 把槽位中的值写入变量 */
+        public void read(int slot, LVar target) {
+            if (isobj[slot]) {
+                target.isobj = true;
+                target.objval = objs[slot];
+            } else {
+                target.isobj = false;
+                target.numval = nums[slot];
+            }
+        }
+        
+        /** 槽位中的值，仅用于日志 */
+        public Object value(int slot) {
+            return isobj[slot] ? objs[slot] : (Object) nums[slot];
+        }
+        
+        /** 最早push的元素的时间，栈为空时返回-1 */
+        public long oldest() {
+            return head == -1 ? -1 : pushTimes[head];
+        }
+        
+        /** 从表头开始移除push时间不晚于limit的元素，返回移除数量 */
+        public int expire(long limit) {
+            int removed = 0;
+            while (head != -1 && pushTimes[head] <= limit) {
+                removeSlot(head);
+                removed++;
+            }
+            return removed;
+        }
+        
+        /** 把所有元素的push时间重置为time（游戏时间倒退时使用） */
+        void restamp(long time) {
+            for (int slot = head; slot != -1; slot = next[slot]) {
+                pushTimes[slot] = time;
+            }
+        }
+        
+        /** 移除槽位 */
+        public void removeSlot(int slot) {
+            unlink(slot);
+            slots.remove(indices[slot], -1);
+            used[slot] = false;
+            objs[slot] = null;
+            if (freeCount == free.length) free = java.util.Arrays.copyOf(free, free.length * 2);
+            free[freeCount++] = slot;
+            size--;
+        }
+        
+        /** 获取索引对应的槽位，不存在时分配新槽位 */
+        private int obtain(int index) {
+            int slot = slots.get(index, -1);
+            if (slot != -1) {
+                // 已存在：移到链表尾部
+                unlink(slot);
+                linkLast(slot);
+                return slot;
+            }
+            
+            if (freeCount > 0) {
+                slot = free[--freeCount];
+            } else {
+                if (top == indices.length) grow();
+                slot = top++;
+            }
+            indices[slot] = index;
+            used[slot] = true;
+            slots.put(index, slot);
+            linkLast(slot);
+            size++;
+            return slot;
+        }
+        
+        private void linkLast(int slot) {
+            prev[slot] = tail;
+            next[slot] = -1;
+            if (tail == -1) {
+                head = slot;
+            } else {
+                next[tail] = slot;
+            }
+            tail = slot;
+        }
+        
+        private void unlink(int slot) {
+            int p = prev[slot], n = next[slot];
+            if (p == -1) {
+                head = n;
+            } else {
+                next[p] = n;
+            }
+            if (n == -1) {
+                tail = p;
+            } else {
+                prev[n] = p;
+            }
+        }
+        
+        private void grow() {
+            int capacity = indices.length * 2;
+            indices = java.util.Arrays.copyOf(indices, capacity);
+            isobj = java.util.Arrays.copyOf(isobj, capacity);
+            nums = java.util.Arrays.copyOf(nums, capacity);
+            objs = java.util.Arrays.copyOf(objs, capacity);
+            pushTimes = java.util.Arrays.copyOf(pushTimes, capacity);
+            used = java.util.Arrays.copyOf(used, capacity);
+            prev = java.util.Arrays.copyOf(prev, capacity);
+            next = java.util.Arrays.copyOf(next, capacity);
+        }
+    }
     
-    /** 全局执行器缓存，key为uniqueId，value为对应的执行器实例 */
-    public static final arc.struct.ObjectMap<String, mindustry.logic.LExecutor> executorCache = new arc.struct.ObjectMap<>();
+    /** 全局栈存储，key为栈名称，value为该栈的句柄 */
+    public static final arc.struct.ObjectMap<String, CallStack> stacks = new arc.struct.ObjectMap<>();
     
-    /** 用于管理栈操作的读写锁 */
-    private static final java.util.concurrent.locks.ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
-    private static final java.util.concurrent.locks.Lock readLock = lock.readLock();
-    private static final java.util.concurrent.locks.Lock writeLock = lock.writeLock();
+    /** 全局执行器缓存，key为uniqueId，value为对应的执行器实例，随处理器拆除和世界加载自动淘汰 */
+    public static final LNestedExecutorCache executorCache = new LNestedExecutorCache();
     
-    /** 栈锁映射表：stackName -> Lock，用于保护栈的创建和索引锁的获取 */
-    private static final arc.struct.ObjectMap<String, java.util.concurrent.locks.Lock> stackLocks = new arc.struct.ObjectMap<>();
-    /** 索引锁映射表：stackName -> (index -> Lock)，为每个栈的每个索引分配独立锁 */
-    private static final arc.struct.ObjectMap<String, arc.struct.ObjectMap<Integer, java.util.concurrent.locks.Lock>> indexLocks = new arc.struct.ObjectMap<>();
+    /**
+     * 并发模式，默认关闭
+     * 关闭时为单线程快速路径：逻辑和自动回收都在游戏更新线程执行，栈操作不加锁；
+     * 开启时供从工作线程驱动逻辑的服务器使用，按栈加锁（锁条带化到每个栈），注册表另有一把锁
+     */
+    public static boolean concurrent = false;
     
-    /** 定时器，用于自动回收栈元素 */
-    private static Timer.Task cleanupTask;
+    /** 用于保护栈注册表的锁，仅在并发模式下获取/创建/移除栈句柄时使用 */
+    private static final java.util.concurrent.locks.Lock writeLock = new java.util.concurrent.locks.ReentrantLock();
     
-    /** 元素超时时间，默认10秒 */
+    /** 元素超时时间（秒），默认10秒，可被设置项lnestedlogic-element-timeout覆盖 */
     public static int elementTimeout = 10;
     
-    /** 检查间隔，默认10秒 */
-    public static int checkInterval = 10;
+    /** 检查被丢弃的嵌套执行器的间隔（tick） */
+    public static int discardSweepInterval = 300;
+    private static int discardSweepTimer = 0;
     
     /** 用于跟踪嵌套深度的静态ThreadLocal变量 */
     private static final ThreadLocal<Integer> nestedDepth = ThreadLocal.withInitial(() -> 0);
     
-    static {
-        // 初始化自动回收定时器
-        initCleanupTimer();
+    /** 注册生命周期事件，处理器被移除或世界重新加载时淘汰对应的嵌套执行器 */
+    public static void init() {
+        Events.on(EventType.TilePreChangeEvent.class, e -> {
+            if (e.tile.build instanceof LogicBlock.LogicBuild build) {
+                executorCache.evictOwner(build);
+            }
+        });
+        Events.on(EventType.ResetEvent.class, e -> {
+            executorCache.clear();
+            releaseUids();
+        });
+        Events.on(EventType.WorldLoadEvent.class, e -> executorCache.clear());
+        // 栈元素超时回收：每次游戏更新推进时间轮
+        Events.run(EventType.Trigger.update, LNestedStackWheel::advance);
+        // 定期释放处理器重新加载代码后被丢弃的嵌套执行器的单位池
+        Events.run(EventType.Trigger.update, () -> {
+            if (++discardSweepTimer >= discardSweepInterval) {
+                discardSweepTimer = 0;
+                executorCache.sweepDiscarded();
+            }
+        });
     }
     
-    /** 初始化自动回收定时器 */
-    private static void initCleanupTimer() {
-        if (cleanupTask != null) {
-            cleanupTask.cancel();
-        }
-        
-        cleanupTask = Timer.schedule(() -> cleanupStacks(), checkInterval, checkInterval);
-        LELog.debug("初始化自动回收定时器，每" + checkInterval + "秒检查一次，元素超时时间：" + elementTimeout + "秒");
+    /** 元素超时时间（tick） */
+    static long timeoutTicks() {
+        return settings.getInt("lnestedlogic-element-timeout", elementTimeout) * 60L;
     }
     
-    /** 清理超时的栈元素和空栈 */
-    private static void cleanupStacks() {
-        writeLock.lock();
+    /** 移除已清空的栈，调用方需持有栈锁 */
+    static void removeIfEmpty(CallStack stack) {
+        if (!stack.isEmpty() || stack.removed) return;
+        boolean locked = concurrent;
+        if (locked) writeLock.lock();
         try {
-            if (stacks.isEmpty()) return;
-            
-            long currentTime = System.currentTimeMillis();
-            int timeoutValue = settings.getInt("lnestedlogic-element-timeout", elementTimeout);
-            long timeoutMs = timeoutValue * 1000L;
-            
-            Seq<String> emptyStacks = new Seq<>();
-            for (arc.struct.ObjectMap.Entry<String, Seq<CallStackElement>> entry : stacks) {
-                String stackName = entry.key;
-                Seq<CallStackElement> stack = entry.value;
-                
-                if (stack.isEmpty()) {
-                    emptyStacks.add(stackName);
-                    continue;
-                }
-                
-                stack.removeAll(elem -> {
-                    boolean isTimeout = currentTime - elem.lastPushTime > timeoutMs;
-                    return isTimeout;
-                });
-                
-                if (stack.isEmpty()) {
-                    emptyStacks.add(stackName);
-                }
-            }
-            
-            for (String stackName : emptyStacks) {
-                stacks.remove(stackName);
+            if (stacks.get(stack.name) == stack) {
+                stacks.remove(stack.name);
             }
+            stack.removed = true;
         } finally {
-            writeLock.unlock();
+            if (locked) writeLock.unlock();
         }
     }
     
-    /** 获取指定名称的栈，如果不存在则创建 */
-    public static Seq<CallStackElement> getStack(String stackName) {
-        writeLock.lock();
+    /** 所有栈句柄的快照 */
+    static Seq<CallStack> allStacks() {
+        boolean locked = concurrent;
+        if (locked) writeLock.lock();
         try {
-            if (stackName == null || stackName.isEmpty()) {
-                stackName = "default";
-            }
-            if (!stacks.containsKey(stackName)) {
-                stacks.put(stackName, new Seq<>());
-            }
-            return stacks.get(stackName);
+            return stacks.values().toSeq();
         } finally {
-            writeLock.unlock();
+            if (locked) writeLock.unlock();
         }
     }
     
-    /** 获取或创建栈锁，用于保护栈的创建和索引锁的获取 */
-    private static java.util.concurrent.locks.Lock getStackLock(String stackName) {
-        writeLock.lock();
+    /** 获取指定名称的栈句柄，如果不存在则创建 */
+    public static CallStack getStack(String stackName) {
+        if (stackName == null || stackName.isEmpty()) {
+            stackName = "default";
+        }
+        boolean locked = concurrent;
+        if (locked) writeLock.lock();
         try {
-            if (!stackLocks.containsKey(stackName)) {
-                stackLocks.put(stackName, new java.util.concurrent.locks.ReentrantLock());
+            CallStack stack = stacks.get(stackName);
+            if (stack == null) {
+                stack = new CallStack(stackName);
+                stacks.put(stackName, stack);
             }
-            return stackLocks.get(stackName);
+            return stack;
         } finally {
-            writeLock.unlock();
+            if (locked) writeLock.unlock();
         }
     }
     
-    /** 获取或创建索引锁，为每个栈的每个索引分配独立锁 */
-    private static java.util.concurrent.locks.Lock getIndexLock(String stackName, int index) {
-        writeLock.lock();
+    /** 获取指定名称的栈句柄，不存在时返回null，不会创建新栈 */
+    public static CallStack findStack(String stackName) {
+        boolean locked = concurrent;
+        if (locked) writeLock.lock();
         try {
-            if (!indexLocks.containsKey(stackName)) {
-                indexLocks.put(stackName, new arc.struct.ObjectMap<>());
-            }
-            arc.struct.ObjectMap<Integer, java.util.concurrent.locks.Lock> stackIndexLocks = indexLocks.get(stackName);
-            if (!stackIndexLocks.containsKey(index)) {
-                stackIndexLocks.put(index, new java.util.concurrent.locks.ReentrantLock());
-            }
-            return stackIndexLocks.get(index);
+            return stacks.get(stackName);
         } finally {
-            writeLock.unlock();
+            if (locked) writeLock.unlock();
+        }
+    }
+    
+    /**
+     * 已被占用的call指令UID -> 占用该UID的call语句（弱引用）
+     * 解析call指令时，未被占用的UID原样保留并占用，已被占用的UID视为复制并分配新的UID。
+     * 占用与语句的生命周期绑定：语句随处理器的指令一起存在，处理器被移除或重新加载代码后语句被回收，占用随之失效，
+     * 与执行器是否在缓存中无关。世界重置时清空；开始读取新的存档/地图时也会清空，因此存档中的UID在读取后保持不变。
+     * 超过maxClaimedUids时清理语句已被回收的占用，避免编辑器反复读取代码时无限增长
+     */
+    private static final arc.struct.ObjectMap<String, java.lang.ref.WeakReference<LNestedLogicStatement>> claimedUids = new arc.struct.ObjectMap<>();
+    /** 上一次解析时是否处于世界加载中，用于识别新一轮加载的开始 */
+    private static boolean lastParseGenerating = false;
+    /** UID占用数量的整理阈值 */
+    public static int maxClaimedUids = 8192;
+    /** 下一次整理的占用数量，整理后按剩余数量翻倍，避免存活语句较多时每次解析都整理 */
+    private static int pruneClaimsAt = maxClaimedUids;
+    
+    /** 为语句占用UID，返回实际使用的UID：已被其他存活的语句占用时返回新生成的UID */
+    public static synchronized String claimUid(String uid, LNestedLogicStatement stmt) {
+        boolean generating = world != null && world.isGenerating();
+        if (generating && !lastParseGenerating) {
+            // 新一轮世界加载开始，之前的占用全部失效
+            claimedUids.clear();
+        }
+        lastParseGenerating = generating;
+        if (claimedUids.size >= pruneClaimsAt) pruneClaims();
+        
+        if (uid == null || uid.isEmpty() || claimed(uid, stmt)) {
+            do {
+                uid = newUid();
+            } while (claimedUids.containsKey(uid));
+            log("create: UID 已被占用或为空，生成新的 UID: @", uid);
         }
+        claimedUids.put(uid, new java.lang.ref.WeakReference<>(stmt));
+        return uid;
+    }
+    
+    /** UID是否已被其他仍存活的语句占用 */
+    private static boolean claimed(String uid, LNestedLogicStatement stmt) {
+        java.lang.ref.WeakReference<LNestedLogicStatement> ref = claimedUids.get(uid);
+        if (ref == null) return false;
+        LNestedLogicStatement owner = ref.get();
+        return owner != null && owner != stmt;
+    }
+    
+    /** 释放所有UID占用 */
+    public static synchronized void releaseUids() {
+        claimedUids.clear();
+        lastParseGenerating = false;
+        pruneClaimsAt = maxClaimedUids;
+    }
+    
+    /** 移除语句已被回收的UID占用 */
+    private static void pruneClaims() {
+        arc.struct.ObjectMap.Entries<String, java.lang.ref.WeakReference<LNestedLogicStatement>> it = claimedUids.entries();
+        while (it.hasNext()) {
+            if (it.next().value.get() == null) it.remove();
+        }
+        pruneClaimsAt = Math.max(maxClaimedUids, claimedUids.size * 2);
+        if (LELog.enabled()) LELog.debug("整理UID占用，剩余 " + claimedUids.size + " 个");
+    }
+    
+    /** 生成新的UID，使用非阻塞的随机数，避免SecureRandom的开销 */
+    public static String newUid() {
+        java.util.concurrent.ThreadLocalRandom random = java.util.concurrent.ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
     }
     
     /** 日志记录方法 */
@@ -172,11 +404,24 @@ public class LNestedLogic {
         LELog.debug(message);
     }
     
+    /** 日志记录方法，消息中的@依次替换为参数，日志关闭时不拼接字符串 */
+    public static void log(String format, Object arg1) {
+        LELog.debug(format, arg1);
+    }
+    
+    public static void log(String format, Object arg1, Object arg2) {
+        LELog.debug(format, arg1, arg2);
+    }
+    
+    public static void log(String format, Object arg1, Object arg2, Object arg3) {
+        LELog.debug(format, arg1, arg2, arg3);
+    }
+    
     public static class LNestedLogicStatement extends LStatement {
         // 指令类型
         public NestedLogicType type = NestedLogicType.push;
         // 唯一编号，用于标识每个call指令实例
-        public String uniqueId = UUID.randomUUID().toString();
+        public String uniqueId = newUid();
         // 第一个参数（push的变量名，或call的逻辑名）
         public String p1 = "var";
         // 第二个参数（index，push/pop使用）
@@ -185,11 +430,8 @@ public class LNestedLogic {
         public String p3 = "default";
         // 存储嵌套的逻辑代码（仅call类型使用）
         public String nestedCode = "";
-        
-        // 编译后的嵌套逻辑缓存
-        private transient LAssembler cachedNestedBuilder = null;
-        // 嵌套执行器缓存，用于保持变量状态
-        private transient LExecutor cachedNestedExec = null;
+        // call的执行模式（仅call类型使用）
+        public CallMode callMode = CallMode.full;
         
         @Override
         public String name() {
@@ -337,8 +579,6 @@ public class LNestedLogic {
                         if (executorCache.containsKey(uniqueId)) {
                             log("从全局缓存中获取执行器显示变量值");
                             nestedExecutor = executorCache.get(uniqueId);
-                            // 同时更新实例缓存
-                            cachedNestedExec = nestedExecutor;
                         } else {
                             // 否则创建一个新的 LExecutor 对象
                             log("创建新的执行器显示变量值");
@@ -347,7 +587,7 @@ public class LNestedLogic {
                             
                             // 编译嵌套逻辑代码，获取变量信息
                             try {
-                                mindustry.logic.LAssembler nestedBuilder = mindustry.logic.LAssembler.assemble(nestedCode, false);
+                                mindustry.logic.LAssembler nestedBuilder = LNestedProgramCache.assemble(nestedCode);
                                 nestedExecutor.load(nestedBuilder);
                             } catch (Exception e) {
                                 log("编译嵌套逻辑代码失败: " + e.getMessage());
@@ -381,6 +621,19 @@ public class LNestedLogic {
                     });
                 }, Styles.logict, () -> {}).size(120f, 40f).color(table.color).pad(2f)
                 .self(elem -> tooltip(elem, bundle.get("lnestedlogic.editlogic", "Edit Logic")));
+                
+                row(table);
+                
+                // 执行模式选择按钮
+                table.add(" mode ").left().self(c -> tooltip(c, "lnestedlogic.callmode"));
+                table.button(b -> {
+                    b.label(() -> callMode.name());
+                    b.clicked(() -> showSelect(b, CallMode.values(), callMode, m -> {
+                        callMode = m;
+                        saveUI();
+                    }, 2, cell -> cell.size(100, 50)));
+                }, Styles.logict, () -> {}).size(100f, 40f).color(table.color).left().pad(2f)
+                .self(c -> tooltip(c, "lnestedlogic.callmode"));
             } else if (type == NestedLogicType.pop) {
                 fields(table, "Variable", p1, str -> {
                     p1 = str;
@@ -407,322 +660,13 @@ public class LNestedLogic {
         public LExecutor.LInstruction build(LAssembler builder) {
             switch (type) {
                 case push:
-                    if (!p1.isEmpty()) builder.var(p1);
-                    if (!p2.isEmpty()) builder.var(p2);
-                    if (!p3.isEmpty()) builder.var(p3);
-                    
-                    return (exec) -> {
-                        Object pushValue;
-                        boolean isVariable = false;
-                        
-                        LVar var = exec.optionalVar(p1);
-                        if (var != null) {
-                            isVariable = true;
-                            pushValue = var.isobj ? var.objval : var.numval;
-                        } else {
-                            try {
-                                pushValue = Double.parseDouble(p1);
-                            } catch (NumberFormatException e) {
-                                pushValue = p1.startsWith("\"") && p1.endsWith("\"") 
-                                    ? p1.substring(1, p1.length() - 1) : p1;
-                            }
-                        }
-                        
-                        int index = 0;
-                        if (!p2.isEmpty()) {
-                            LVar indexVar = exec.optionalVar(p2);
-                            if (indexVar != null) {
-                                if (!indexVar.isobj) {
-                                    index = (int) indexVar.numval;
-                                    log("使用变量 " + p2 + " 的值 " + indexVar.numval + " 作为索引");
-                                } else if (indexVar.objval instanceof String) {
-                                    try {
-                                        index = Integer.parseInt((String) indexVar.objval);
-                                        log("成功将文本变量 \"" + p2 + "\" 的值 \"" + indexVar.objval + "\" 解析为索引 " + index);
-                                    } catch (NumberFormatException ignored) {
-                                        log("无法将文本变量 \"" + p2 + "\" 的值解析为数字，使用默认索引 0");
-                                    }
-                                } else {
-                                    log("变量 " + p2 + " 是对象类型，使用默认索引 0");
-                                }
-                            } else {
-                                try {
-                                    index = Integer.parseInt(p2);
-                                    log("使用直接数字 " + p2 + " 作为索引");
-                                } catch (NumberFormatException ignored) {
-                                    log("无法解析 \"" + p2 + "\" 为数字，使用默认索引 0");
-                                }
-                            }
-                        }
-                        
-                        String stackName = p3.isEmpty() ? "default" : p3;
-                        LVar stackNameVar = exec.optionalVar(stackName);
-                        if (stackNameVar != null) {
-                            stackName = stackNameVar.isobj 
-                                ? (stackNameVar.objval != null ? stackNameVar.objval.toString() : "default")
-                                : String.valueOf(stackNameVar.numval);
-                        }
-                        
-                        String encodedStackName = Base64.getEncoder().encodeToString(stackName.getBytes(StandardCharsets.UTF_8));
-                        
-                        // 1. 获取栈锁，用于保护栈的创建和访问
-                        java.util.concurrent.locks.Lock stackLock = getStackLock(encodedStackName);
-                        stackLock.lock();
-                        try {
-                            Seq<CallStackElement> currentStack = getStack(encodedStackName);
-                            
-                            // 2. 获取索引锁，为当前索引分配独立锁
-                            java.util.concurrent.locks.Lock indexLock = getIndexLock(encodedStackName, index);
-                            indexLock.lock();
-                            try {
-                                // 检查调用栈中是否已经存在该索引，如果存在则更新其值
-                                boolean alreadyExists = false;
-                                for (CallStackElement existingElem : currentStack) {
-                                    if (existingElem.index == index) {
-                                        // 更新已有索引的值
-                                        existingElem.varName = p1;
-                                        existingElem.varValue = pushValue;
-                                        existingElem.stackName = encodedStackName;
-                                        existingElem.lastPushTime = System.currentTimeMillis();
-                                        alreadyExists = true;
-                                        log("更新栈 \"" + encodedStackName + "\" 中索引 " + index + " 的" + (isVariable ? "变量 " : "值 ") + p1 + " 值为 " + existingElem.varValue);
-                                        break;
-                                    }
-                                }
-                                
-                                if (!alreadyExists) {
-                                    CallStackElement elem = new CallStackElement();
-                                    elem.varName = p1;
-                                    elem.varValue = pushValue;
-                                    elem.index = index;
-                                    elem.stackName = encodedStackName;
-                                    elem.lastPushTime = System.currentTimeMillis();
-                                    currentStack.add(elem);
-                                    log("将" + (isVariable ? "变量 " : "值 ") + p1 + " 压入栈 \"" + encodedStackName + "\" 的索引 " + index + "，值为 " + elem.varValue);
-                                }
-                            } finally {
-                                // 3. 先释放索引锁
-                                indexLock.unlock();
-                            }
-                        } finally {
-                            // 4. 再释放栈锁
-                            stackLock.unlock();
-                        }
-                    };
+                    return new StackPushI(this, builder);
                     
                 case call:
-                    return (exec) -> {
-                        // 简化的嵌套深度限制
-                        // 使用静态ThreadLocal变量来跟踪嵌套深度
-                        if (nestedDepth.get() >= 5) {
-                            log("嵌套深度超过限制，最大深度为5");
-                            return;
-                        }
-                        
-                        String currentUniqueId = uniqueId;
-                        try {
-                            nestedDepth.set(nestedDepth.get() + 1);
-                            
-                            // 动态获取最新的uniqueId值
-                            currentUniqueId = uniqueId;
-                            log("开始执行call指令，逻辑名称: " + p1 + "，唯一编号: " + currentUniqueId);
-                            
-                            LExecutor nestedExec;
-                            
-                            // 优先使用实例缓存的执行器，确保执行流程正常
-                            if (cachedNestedExec == null) {
-                                log("第一次执行，编译嵌套逻辑");
-                                
-                                LAssembler nestedBuilder = LAssembler.assemble(nestedCode, false);
-                                
-                                if (exec.build != null) {
-                                    for (var link : exec.build.links) {
-                                        if (link.valid) {
-                                            Building building = world.build(link.x, link.y);
-                                            if (building != null) {
-                                                nestedBuilder.putConst(link.name, building);
-                                            }
-                                        }
-                                    }
-                                }
-                                
-                                nestedExec = new LExecutor();
-                                nestedExec.build = exec.build;
-                                nestedExec.team = exec.team;
-                                nestedExec.privileged = exec.privileged;
-                                nestedExec.links = exec.links;
-                                nestedExec.linkIds = exec.linkIds;
-                                
-                                nestedExec.load(nestedBuilder);
-                                
-                                cachedNestedBuilder = nestedBuilder;
-                                cachedNestedExec = nestedExec;
-                                // 同时存储到全局缓存中
-                                executorCache.put(currentUniqueId, nestedExec);
-                                log("缓存嵌套逻辑和执行器");
-                                log("将执行器存储到全局缓存，uniqueId: " + currentUniqueId);
-                                log("this.uniqueId: " + this.uniqueId);
-                            } else {
-                                nestedExec = cachedNestedExec;
-                                nestedExec.build = exec.build;
-                                nestedExec.team = exec.team;
-                                nestedExec.privileged = exec.privileged;
-                                nestedExec.links = exec.links;
-                                nestedExec.linkIds = exec.linkIds;
-                                log("使用缓存的执行器，保持变量状态");
-                            }
-                            
-                            // 更新嵌套执行器的常量
-                            if (nestedExec.build != null) {
-                                LVar linksVar = nestedExec.optionalVar("@links");
-                                if (linksVar != null) {
-                                    linksVar.isobj = false;
-                                    linksVar.numval = nestedExec.links.length;
-                                }
-                                
-                                LVar iptVar = nestedExec.optionalVar("@ipt");
-                                if (iptVar != null) {
-                                    iptVar.isobj = false;
-                                    iptVar.numval = nestedExec.build.ipt;
-                                }
-                            }
-                            
-                            // 复制动态变量
-                            if (nestedExec.thisv != null && exec.thisv != null) {
-                                nestedExec.thisv.set(exec.thisv);
-                            }
-                            if (nestedExec.unit != null && exec.unit != null) {
-                                nestedExec.unit.set(exec.unit);
-                            }
-                            
-                            // 重置计数器
-                            if (nestedExec.counter != null) {
-                                nestedExec.counter.numval = 0;
-                            }
-                            
-                            // 执行嵌套指令
-                            int nestedCounter = 0;
-                            int nestedMaxInstructions = LExecutor.maxInstructions;
-                            
-                            while (nestedExec.counter.numval < nestedExec.instructions.length && nestedCounter < nestedMaxInstructions) {
-                                nestedExec.runOnce();
-                                nestedCounter++;
-                            }
-                            
-                            // 更新全局缓存和实例缓存中的执行器，确保变量值的更新能够同步
-                            executorCache.put(currentUniqueId, nestedExec);
-                            cachedNestedExec = nestedExec;
-                            log("更新全局缓存中的执行器，uniqueId: " + currentUniqueId);
-                            log("更新实例缓存中的执行器");
-                            log("嵌套逻辑执行完毕，执行了 " + nestedCounter + " 条指令");
-
-                        } finally {
-                            nestedDepth.set(nestedDepth.get() - 1);
-                            log("退出call指令，逻辑名称: " + p1 + "，唯一编号: " + currentUniqueId);
-                        }
-                    };
+                    return new NestedCallI(this);
                     
                 case pop:
-                    if (!p1.isEmpty()) builder.var(p1);
-                    if (!p2.isEmpty()) builder.var(p2);
-                    if (!p3.isEmpty()) builder.var(p3);
-                    
-                    return (exec) -> {
-                        String stackName = p3.isEmpty() ? "default" : p3;
-                        LVar stackNameVar = exec.optionalVar(stackName);
-                        if (stackNameVar != null) {
-                            stackName = stackNameVar.isobj 
-                                ? (stackNameVar.objval != null ? stackNameVar.objval.toString() : "default")
-                                : String.valueOf(stackNameVar.numval);
-                        }
-                        
-                        String encodedStackName = Base64.getEncoder().encodeToString(stackName.getBytes(StandardCharsets.UTF_8));
-                        
-                        int index = 0;
-                        if (!p2.isEmpty()) {
-                            LVar indexVar = exec.optionalVar(p2);
-                            if (indexVar != null) {
-                                if (!indexVar.isobj) {
-                                    index = (int) indexVar.numval;
-                                    log("使用变量 " + p2 + " 的值 " + indexVar.numval + " 作为索引");
-                                } else if (indexVar.objval instanceof String) {
-                                    try {
-                                        index = Integer.parseInt((String) indexVar.objval);
-                                        log("成功将文本变量 \"" + p2 + "\" 的值 \"" + indexVar.objval + "\" 解析为索引 " + index);
-                                    } catch (NumberFormatException ignored) {
-                                        log("无法将文本变量 \"" + p2 + "\" 的值解析为数字，使用默认索引 0");
-                                    }
-                                } else {
-                                    log("变量 " + p2 + " 是对象类型，使用默认索引 0");
-                                }
-                            } else {
-                                try {
-                                    index = Integer.parseInt(p2);
-                                    log("使用直接数字 " + p2 + " 作为索引");
-                                } catch (NumberFormatException ignored) {
-                                    log("无法解析 \"" + p2 + "\" 为数字，使用默认索引 0");
-                                }
-                            }
-                        }
-                        
-                        LVar targetVar = exec.optionalVar(p1);
-                        if (targetVar == null) {
-                            log("目标变量 " + p1 + " 不存在");
-                            return;
-                        }
-                        
-                        // 1. 获取栈锁，用于保护栈的访问
-                        java.util.concurrent.locks.Lock stackLock = getStackLock(encodedStackName);
-                        stackLock.lock();
-                        try {
-                            // 直接访问stacks变量，不调用getStack方法，避免创建新栈
-                            Seq<CallStackElement> currentStack = stacks.get(encodedStackName);
-                            if (currentStack == null || currentStack.isEmpty()) {
-                                log("栈 \"" + encodedStackName + "\" 为空，无法读取值");
-                                // 将目标变量设置为null
-                                targetVar.isobj = true;
-                                targetVar.objval = null;
-                                return;
-                            }
-                            
-                            // 2. 获取索引锁，为当前索引分配独立锁
-                            java.util.concurrent.locks.Lock indexLock = getIndexLock(encodedStackName, index);
-                            indexLock.lock();
-                            try {
-                                // 查找指定索引的元素
-                                CallStackElement targetElem = null;
-                                for (CallStackElement elem : currentStack) {
-                                    if (elem.index == index) {
-                                        targetElem = elem;
-                                        break;
-                                    }
-                                }
-                                
-                                if (targetElem != null) {
-                                    if (targetElem.varValue instanceof Double) {
-                                        targetVar.isobj = false;
-                                        targetVar.numval = (Double) targetElem.varValue;
-                                    } else {
-                                        targetVar.isobj = true;
-                                        targetVar.objval = targetElem.varValue;
-                                    }
-                                    
-                                    log("从栈 \"" + encodedStackName + "\" 的索引 " + index + " 读取值 " + targetElem.varValue + " 到变量 " + p1);
-                                } else {
-                                    log("栈 \"" + encodedStackName + "\" 中不存在索引为 " + index + " 的元素");
-                                    // 将目标变量设置为null
-                                    targetVar.isobj = true;
-                                    targetVar.objval = null;
-                                }
-                            } finally {
-                                // 3. 先释放索引锁
-                                indexLock.unlock();
-                            }
-                        } finally {
-                            // 4. 再释放栈锁
-                            stackLock.unlock();
-                        }
-                    };
+                    return new StackPopI(this, builder);
                     
                 default:
                     return (exec) -> {};
@@ -736,18 +680,22 @@ public class LNestedLogic {
 
         @Override
         public void write(StringBuilder builder) {
-            log("write: 开始序列化指令，类型: " + type.name());
+            log("write: 开始序列化指令，类型: @", type.name());
             builder.append("nestedlogic ").append(type.name()).append(" ");
             
             if (type == NestedLogicType.call) {
                 // 直接使用现有的 uniqueId，不生成新的 UUID
-                log("write: 写入 call 指令，UID: " + uniqueId + "，逻辑名称: " + p1);
+                log("write: 写入 call 指令，UID: @，逻辑名称: @", uniqueId, p1);
                 builder.append(uniqueId).append(" " ).append(p1).append(" ");
                 String encoded = Base64.getEncoder().encodeToString(nestedCode.getBytes(StandardCharsets.UTF_8));
-                log("write: 写入嵌套代码 (Base64): " + encoded);
+                log("write: 写入嵌套代码 (Base64): @", encoded);
                 builder.append('"').append(encoded).append('"');
+                // 默认模式不写出，保持旧格式兼容
+                if (callMode != CallMode.full) {
+                    builder.append(" ").append(callMode.name());
+                }
             } else {
-                log("write: 写入非 call 指令，参数: " + p1 + ", " + p2 + ", " + p3);
+                log("write: 写入非 call 指令，参数: @, @, @", p1, p2, p3);
                 builder.append(p1).append(" " ).append(p2).append(" " ).append(p3);
             }
             log("write: 序列化完成");
@@ -758,37 +706,35 @@ public class LNestedLogic {
         // 更新嵌套代码时清除缓存
         public void setNestedCode(String nestedCode) {
             this.nestedCode = nestedCode;
-            this.cachedNestedBuilder = null;
-            this.cachedNestedExec = null;
             // 同时从全局缓存中移除
             if (executorCache.containsKey(uniqueId)) {
                 executorCache.remove(uniqueId);
-                log("从全局缓存中移除执行器，uniqueId: " + uniqueId);
+                log("从全局缓存中移除执行器，uniqueId: @", uniqueId);
             }
             log("nestedCode更新，清除缓存");
         }
         
         public static void create() {
             LAssembler.customParsers.put("nestedlogic", params -> {
-                log("create: 开始解析指令，参数数量: " + params.length);
+                if (LELog.enabled()) log("create: 开始解析指令，参数数量: " + params.length);
                 for (int i = 0; i < params.length; i++) {
-                    log("create: 参数[" + i + "]: " + params[i]);
+                    if (LELog.enabled()) log("create: 参数[" + i + "]: " + params[i]);
                 }
                 
                 LNestedLogicStatement stmt = new LNestedLogicStatement();
-                log("create: 新建语句，默认 UID: " + stmt.uniqueId);
+                log("create: 新建语句，默认 UID: @", stmt.uniqueId);
                 
                 // 处理旧格式兼容性
                 if (params.length >= 2) {
                     try {
                         stmt.type = NestedLogicType.valueOf(params[1]);
-                        log("create: 解析指令类型: " + stmt.type.name());
+                        log("create: 解析指令类型: @", stmt.type.name());
                     } catch (IllegalArgumentException e) {
                         stmt.type = NestedLogicType.call;
                         log("create: 解析指令类型失败，使用默认类型: call");
                         if (params.length >= 3) {
                             stmt.nestedCode = params[2];
-                            log("create: 直接设置嵌套代码: " + params[2]);
+                            log("create: 直接设置嵌套代码: @", params[2]);
                         }
                         log("create: 旧格式处理完成，返回语句");
                         return stmt;
@@ -801,66 +747,20 @@ public class LNestedLogic {
                     if (params.length >= 3) {
                         try {
                             String potentialUid = params[2];
-                            log("create: 解析 UID 参数: " + potentialUid);
-
-                            if (potentialUid == null) {
-                                potentialUid = UUID.randomUUID().toString();
-                                log("create: UID 为 null，生成新的 UUID: " + potentialUid);
-                            } else {
-                                //判断调用栈是否包含复制操作的特征片段（覆盖所有触发方式）
-                                boolean isCopyOperation = false;
-                                StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-                                
-                                // 标记是否找到复制特征（覆盖所有触发方式）
-                                boolean hasDirectCopy = false; // 直接复制操作
-                                boolean hasLogicDialogSetup = false; // 通过LogicDialog.setup触发
-                                boolean hasLogicBlockUpdate = false; // 通过LogicBlock.updateCode触发
-
-                                // 遍历所有栈元素，打印栈信息（方便你调试查看所有栈元素）
-                                log("create: 开始遍历调用栈，共 " + stackTrace.length + " 个元素");
-                                for (int i = 0; i < stackTrace.length; i++) {
-                                    StackTraceElement element = stackTrace[i];
-                                    String stackElementStr = element.toString(); // 获取和日志一致的完整栈字符串
-                                    log("create: 栈元素[" + i + "]: " + stackElementStr);
-
-                                    // 1. 直接复制操作
-                                    if (stackElementStr.contains("mindustry.logic.LStatement.copy") || 
-                                        stackElementStr.contains("mindustry.logic.LCanvas$StatementElem.copy")) {
-                                        hasDirectCopy = true;
-                                    }
-                                    // 2. 通过LogicDialog.setup触发的复制
-                                    if (stackElementStr.contains("mindustry.logic.LogicDialog") && 
-                                        stackElementStr.contains("setup")) {
-                                        hasLogicDialogSetup = true;
-                                    }
-                                    // 3. 通过LogicBlock.updateCode触发的复制
-                                    if (stackElementStr.contains("mindustry.world.blocks.logic.LogicBlock$LogicBuild") && 
-                                        stackElementStr.contains("updateCode")) {
-                                        hasLogicBlockUpdate = true;
-                                    }
-                                }
+                            log("create: 解析 UID 参数: @", potentialUid);
 
-                                // 核心判断：满足任一复制触发条件
-                                isCopyOperation = hasDirectCopy || hasLogicDialogSetup || hasLogicBlockUpdate;
-                                log("create: 复制操作判定结果 - 直接复制: " + hasDirectCopy + 
-                                    ", LogicDialog.setup: " + hasLogicDialogSetup + 
-                                    ", LogicBlock.updateCode: " + hasLogicBlockUpdate + 
-                                    ", 最终判定为复制操作: " + isCopyOperation);
-
-                                if (isCopyOperation) {
-                                    potentialUid = UUID.randomUUID().toString();
-                                    log("create: 调用栈包含 copy 方法，生成新的 UUID: " + potentialUid);
-                                }
-                            }
+                            // 已被占用的UID说明是复制（复制粘贴、蓝图、编辑器重新读取等），分配新的UID；
+                            // 读取存档时占用表已清空，UID保持不变
+                            potentialUid = claimUid(potentialUid, stmt);
 
                             stmt.uniqueId = potentialUid;
-                            log("create: 设置 UID: " + stmt.uniqueId);
+                            log("create: 设置 UID: @", stmt.uniqueId);
                         } catch (Exception e) {
-                            log("create: 解析 UID 失败，异常信息: " + e.getMessage());
-                            log("create: 解析 UID 失败，使用构造函数生成的 UID: " + stmt.uniqueId);
+                            log("create: 解析 UID 失败，异常信息: @", e.getMessage());
+                            log("create: 解析 UID 失败，使用构造函数生成的 UID: @", stmt.uniqueId);
                         }
                     } else {
-                        log("create: 参数不足（当前参数数: " + params.length + "），使用构造函数生成的 UID: " + stmt.uniqueId);
+                        if (LELog.enabled()) log("create: 参数不足（当前参数数: " + params.length + "），使用构造函数生成的 UID: " + stmt.uniqueId);
                     }
                     // 处理逻辑名称和嵌套代码
                     if (params.length >= 4) {
@@ -869,7 +769,7 @@ public class LNestedLogic {
                         for (int i = 3; i < params.length; i++) {
                             if (params[i].startsWith("\"")) {
                                 codeIndex = i;
-                                log("create: 找到嵌套代码索引: " + codeIndex);
+                                if (LELog.enabled()) log("create: 找到嵌套代码索引: " + codeIndex);
                                 break;
                             }
                         }
@@ -877,32 +777,42 @@ public class LNestedLogic {
                         if (codeIndex != -1) {
                             log("create: 解析嵌套代码");
                             if (codeIndex > 3) {
-                                log("create: 解析逻辑名称，从索引 3 到 " + (codeIndex - 1));
+                                if (LELog.enabled()) log("create: 解析逻辑名称，从索引 3 到 " + (codeIndex - 1));
                                 StringBuilder logicName = new StringBuilder();
                                 for (int i = 3; i < codeIndex; i++) {
                                     if (i > 3) logicName.append(" ");
                                     logicName.append(params[i]);
                                 }
                                 stmt.p1 = logicName.toString();
-                                log("create: 解析逻辑名称: " + stmt.p1);
+                                log("create: 解析逻辑名称: @", stmt.p1);
                             }
                             
                             try {
                                 String rawCode = params[codeIndex];
-                                log("create: 原始嵌套代码: " + rawCode);
+                                log("create: 原始嵌套代码: @", rawCode);
                                 String encoded = rawCode.substring(1, rawCode.length() - 1);
-                                log("create: Base64 编码的嵌套代码: " + encoded);
+                                log("create: Base64 编码的嵌套代码: @", encoded);
                                 byte[] decoded = Base64.getDecoder().decode(encoded);
                                 stmt.nestedCode = new String(decoded, StandardCharsets.UTF_8);
-                                log("create: 解码后的嵌套代码: " + stmt.nestedCode);
+                                log("create: 解码后的嵌套代码: @", stmt.nestedCode);
                             } catch (Exception e) {
-                                log("create: 解码嵌套代码失败: " + e.getMessage());
+                                log("create: 解码嵌套代码失败: @", e.getMessage());
                                 stmt.nestedCode = "";
                             }
+                            
+                            // 嵌套代码之后的可选参数为执行模式
+                            if (params.length > codeIndex + 1) {
+                                try {
+                                    stmt.callMode = CallMode.valueOf(params[codeIndex + 1]);
+                                } catch (IllegalArgumentException e) {
+                                    stmt.callMode = CallMode.full;
+                                }
+                                log("create: 执行模式: @", stmt.callMode.name());
+                            }
                         } else {
                             log("create: 未找到嵌套代码，使用默认值");
                             stmt.p1 = params.length > 3 ? params[3] : "";
-                            log("create: 逻辑名称: " + stmt.p1);
+                            log("create: 逻辑名称: @", stmt.p1);
                             stmt.nestedCode = "";
                         }
                     }
@@ -910,15 +820,15 @@ public class LNestedLogic {
                     log("create: 处理非 call 指令");
                     if (params.length >= 3) {
                         stmt.p1 = params[2];
-                        log("create: 参数 1: " + stmt.p1);
+                        log("create: 参数 1: @", stmt.p1);
                     }
                     if (params.length >= 4) {
                         stmt.p2 = params[3];
-                        log("create: 参数 2: " + stmt.p2);
+                        log("create: 参数 2: @", stmt.p2);
                     }
                     if (params.length >= 5) {
                         stmt.p3 = params[4];
-                        log("create: 参数 3: " + stmt.p3);
+                        log("create: 参数 3: @", stmt.p3);
                     }
                 }
                 
@@ -929,5 +839,378 @@ public class LNestedLogic {
             LogicIO.allStatements.add(LNestedLogicStatement::new);
             log("create: 注册自定义解析器和语句完成");
         }
+    }    
+    /** call分支的指令，每个调用点持有自己的嵌套执行器和变量状态，指令程序来自共享的程序缓存 */
+    public static class NestedCallI implements LExecutor.LInstruction {
+        /** 所属的call语句 */
+        public final LNestedLogicStatement stmt;
+        /** 当前调用点的嵌套执行器 */
+        public LExecutor nestedExec;
+        /** 分片模式下，嵌套逻辑是否在上一tick中途暂停，等待继续执行 */
+        public boolean suspended = false;
+        /** 分片模式下本次调用跨所有分片累计执行的指令数，达到maxInstructions时结束调用，与非分片模式一致 */
+        public int slicedTotal = 0;
+        
+        public NestedCallI(LNestedLogicStatement stmt) {
+            this.stmt = stmt;
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            // 简化的嵌套深度限制
+            // 使用静态ThreadLocal变量来跟踪嵌套深度
+            if (nestedDepth.get() >= 5) {
+                log("嵌套深度超过限制，最大深度为5");
+                return;
+            }
+            
+            String currentUniqueId = stmt.uniqueId;
+            try {
+                nestedDepth.set(nestedDepth.get() + 1);
+                
+                log("开始执行call指令，逻辑名称: @，唯一编号: @", stmt.p1, currentUniqueId);
+                
+                if (nestedExec == null) {
+                    log("第一次执行，从程序缓存构建嵌套逻辑");
+                    
+                    LAssembler nestedBuilder = LNestedProgramCache.assemble(stmt.nestedCode);
+                    
+                    if (exec.build != null) {
+                        // 与处理器一致提供自身位置常量（格坐标），供单位绑定的参考点等使用
+                        nestedBuilder.putConst("@thisx", mindustry.core.World.conv(exec.build.x));
+                        nestedBuilder.putConst("@thisy", mindustry.core.World.conv(exec.build.y));
+                        for (var link : exec.build.links) {
+                            if (link.valid) {
+                                Building building = world.build(link.x, link.y);
+                                if (building != null) {
+                                    nestedBuilder.putConst(link.name, building);
+                                }
+                            }
+                        }
+                    }
+                    
+                    nestedExec = new LExecutor();
+                    nestedExec.build = exec.build;
+                    nestedExec.team = exec.team;
+                    nestedExec.privileged = exec.privileged;
+                    nestedExec.links = exec.links;
+                    nestedExec.linkIds = exec.linkIds;
+                    
+                    nestedExec.load(nestedBuilder);
+                    // 读取存档后第一次创建时恢复保存的变量和单位池
+                    LESaveChunk.restoreNested(currentUniqueId, nestedExec);
+                    
+                    // 同时存储到全局缓存中，供编辑器显示变量值
+                    executorCache.put(currentUniqueId, nestedExec, this);
+                    log("将执行器存储到全局缓存，uniqueId: @", currentUniqueId);
+                } else {
+                    nestedExec.build = exec.build;
+                    nestedExec.team = exec.team;
+                    nestedExec.privileged = exec.privileged;
+                    nestedExec.links = exec.links;
+                    nestedExec.linkIds = exec.linkIds;
+                    log("使用缓存的执行器，保持变量状态");
+                }
+                
+                // 更新嵌套执行器的常量
+                if (nestedExec.build != null) {
+                    LVar linksVar = nestedExec.optionalVar("@links");
+                    if (linksVar != null) {
+                        linksVar.isobj = false;
+                        linksVar.numval = nestedExec.links.length;
+                    }
+                    
+                    LVar iptVar = nestedExec.optionalVar("@ipt");
+                    if (iptVar != null) {
+                        iptVar.isobj = false;
+                        iptVar.numval = nestedExec.build.ipt;
+                    }
+                }
+                
+                // 复制动态变量
+                if (nestedExec.thisv != null && exec.thisv != null) {
+                    nestedExec.thisv.set(exec.thisv);
+                }
+                if (nestedExec.unit != null && exec.unit != null) {
+                    nestedExec.unit.set(exec.unit);
+                }
+                
+                boolean sliced = stmt.callMode == CallMode.sliced;
+                
+                // 重置计数器，分片模式下从上次暂停的位置继续
+                if (nestedExec.counter != null && !suspended) {
+                    nestedExec.counter.numval = 0;
+                    slicedTotal = 0;
+                }
+                
+                // 执行嵌套指令
+                int nestedCounter = 0;
+                int nestedMaxInstructions = sliced ? Math.min(sliceBudget(exec), LExecutor.maxInstructions - slicedTotal) : LExecutor.maxInstructions;
+                
+                while (nestedExec.counter.numval < nestedExec.instructions.length && nestedCounter < nestedMaxInstructions) {
+                    nestedExec.runOnce();
+                    nestedCounter++;
+                    // 分片模式下尊重嵌套逻辑中的wait等让出操作
+                    if (sliced && nestedExec.yield) {
+                        nestedExec.yield = false;
+                        break;
+                    }
+                }
+                
+                if (sliced) slicedTotal += nestedCounter;
+                
+                // 累计执行数达到上限时结束本次调用（如以jump 0 always结尾的嵌套逻辑），避免父处理器永远停在call上
+                if (sliced && nestedExec.counter.numval < nestedExec.instructions.length && slicedTotal < LExecutor.maxInstructions) {
+                    // 未执行完：父处理器停留在当前call指令上并让出本tick，下一tick继续
+                    suspended = true;
+                    exec.counter.numval--;
+                    exec.yield = true;
+                    if (LELog.enabled()) log("嵌套逻辑分片暂停，下一tick从 " + (int)nestedExec.counter.numval + " 继续");
+                } else {
+                    suspended = false;
+                    slicedTotal = 0;
+                }
+                
+                // 更新全局缓存中的执行器，确保变量值的更新能够同步
+                executorCache.put(currentUniqueId, nestedExec, this);
+                if (LELog.enabled()) log("嵌套逻辑执行完毕，执行了 " + nestedCounter + " 条指令");
+                
+            } finally {
+                nestedDepth.set(nestedDepth.get() - 1);
+                log("退出call指令，逻辑名称: @，唯一编号: @", stmt.p1, currentUniqueId);
+            }
+        }
+        
+        /** 分片模式下每tick可执行的指令数，取父处理器的ipt */
+        private static int sliceBudget(LExecutor exec) {
+            if (exec.build == null) return LExecutor.maxInstructions;
+            return Math.max(1, Math.min((int)exec.build.ipt, LExecutor.maxInstructions));
+        }
+    }    
+    /** push/pop指令的公共部分：操作数在构建时绑定为LVar，常量栈名在构建时解析为栈句柄 */
+    public abstract static class StackI implements LExecutor.LInstruction {
+        /** 第一个参数的原始文本（变量名或值） */
+        public final String p1;
+        /** 索引变量，常量索引时为null */
+        public final LVar indexVar;
+        /** 常量索引的预解析值 */
+        public final int constIndex;
+        /** 栈名变量，常量栈名时为null */
+        public final LVar stackVar;
+        /** 常量栈名，或变量栈名最近一次解析的结果 */
+        private String stackName;
+        /** 变量栈名最近一次的数值，用于数值栈名免去字符串转换 */
+        private double stackNum = Double.NaN;
+        /** 当前栈名对应的句柄缓存 */
+        private CallStack handle;
+        
+        StackI(LNestedLogicStatement stmt, LAssembler builder) {
+            p1 = stmt.p1;
+            
+            // 非常量变量在运行时取值；常量（数字、字符串、@copper等内置常量）的值在构建时已确定，直接取其值
+            LVar index = stmt.p2.isEmpty() ? null : builder.var(stmt.p2);
+            if (index != null && !index.constant) {
+                indexVar = index;
+                constIndex = 0;
+            } else {
+                indexVar = null;
+                int parsed = 0;
+                if (index != null) {
+                    if (!index.isobj) {
+                        parsed = (int) index.numval;
+                    } else if (index.objval instanceof String str) {
+                        try {
+                            parsed = Integer.parseInt(str);
+                        } catch (NumberFormatException ignored) {
+                            log("无法解析 \"@\" 为数字，使用默认索引 0", stmt.p2);
+                        }
+                    } else {
+                        log("常量 @ 是对象类型，使用默认索引 0", stmt.p2);
+                    }
+                }
+                constIndex = parsed;
+            }
+            
+            String name = stmt.p3.isEmpty() ? "default" : stmt.p3;
+            LVar stack = builder.var(name);
+            stackVar = stack.constant ? null : stack;
+            stackName = stack.constant ? constName(stack) : name;
+        }
+        
+        /** 常量栈名取常量的值，与变量栈名的转换方式一致 */
+        private static String constName(LVar var) {
+            if (!var.isobj) return String.valueOf(var.numval);
+            return var.objval == null ? "default" : var.objval instanceof String str ? str : var.objval.toString();
+        }
+        
+        /** 读取当前索引 */
+        protected int index() {
+            if (indexVar == null) return constIndex;
+            if (!indexVar.isobj) {
+                return (int) indexVar.numval;
+            } else if (indexVar.objval instanceof String str) {
+                try {
+                    return Integer.parseInt(str);
+                } catch (NumberFormatException ignored) {
+                    log("无法将文本变量 \"@\" 的值解析为数字，使用默认索引 0", indexVar.name);
+                }
+            } else {
+                log("变量 @ 是对象类型，使用默认索引 0", indexVar.name);
+            }
+            return 0;
+        }
+        
+        /** 最近一次解析的栈名 */
+        protected String stackName() {
+            return stackName;
+        }
+        
+        /** 获取当前栈名对应的句柄，create为false时栈不存在返回null */
+        protected CallStack stack(boolean create) {
+            if (stackVar != null) {
+                if (stackVar.isobj) {
+                    Object value = stackVar.objval;
+                    String name = value == null ? "default" : value instanceof String str ? str : value.toString();
+                    if (name != stackName && !name.equals(stackName)) {
+                        stackName = name;
+                        stackNum = Double.NaN;
+                        handle = null;
+                    }
+                } else if (stackVar.numval != stackNum || stackName == null) {
+                    stackNum = stackVar.numval;
+                    stackName = String.valueOf(stackVar.numval);
+                    handle = null;
+                }
+            }
+            
+            if (handle == null || handle.removed) {
+                handle = create ? getStack(stackName) : findStack(stackName);
+            }
+            return handle;
+        }
+    }
+    
+    /** push分支的指令 */
+    public static class StackPushI extends StackI {
+        /** 要压入的变量，常量时为null */
+        public final LVar valueVar;
+        /** 常量的值，构建时取自常量变量 */
+        public final Object constValue;
+        
+        public StackPushI(LNestedLogicStatement stmt, LAssembler builder) {
+            super(stmt, builder);
+            
+            LVar value = stmt.p1.isEmpty() ? null : builder.var(stmt.p1);
+            if (value != null && !value.constant) {
+                valueVar = value;
+                constValue = null;
+            } else {
+                valueVar = null;
+                // 数字、字符串、@copper等常量直接取其值，而不是按原始文本解析；@this、连接名等构建后才成为常量的仍在运行时取值
+                constValue = value == null ? p1 : value.isobj ? value.objval : (Object) value.numval;
+            }
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            boolean isVariable = valueVar != null;
+            int index = index();
+            
+            // 并发模式下获取栈锁，单线程模式不加锁
+            CallStack stack = stack(true);
+            boolean locked = concurrent;
+            if (locked) {
+                stack.lock.lock();
+                // 加锁前栈可能已被自动回收，重新获取句柄
+                while (stack.removed) {
+                    stack.lock.unlock();
+                    stack = stack(true);
+                    stack.lock.lock();
+                }
+            }
+            try {
+                // 只在日志开启时查询，关闭时不产生额外开销
+                boolean alreadyExists = LELog.enabled() && stack.slot(index) != -1;
+                long time = (long) state.tick;
+                
+                // 已存在该索引时直接覆盖其槽位
+                if (valueVar != null && !valueVar.isobj) {
+                    stack.put(index, valueVar.numval, time);
+                } else if (valueVar != null) {
+                    stack.put(index, valueVar.objval, time);
+                } else if (constValue instanceof Double num) {
+                    stack.put(index, num.doubleValue(), time);
+                } else {
+                    stack.put(index, constValue, time);
+                }
+                
+                // 首次有元素时登记到时间轮
+                LNestedStackWheel.schedule(stack, stack.oldest() + LNestedStackWheel.timeout);
+                
+                if (LELog.enabled()) log((alreadyExists ? "更新栈 \"" : "压入栈 \"") + stack.name + "\" 的索引 " + index + "，" + (isVariable ? "变量 " : "值 ") + p1 + " 值为 " + stack.value(stack.slot(index)));
+            } finally {
+                if (locked) stack.lock.unlock();
+            }
+        }
+    }
+    
+    /** pop分支的指令 */
+    public static class StackPopI extends StackI {
+        /** 接收值的目标变量，目标为常量时为null */
+        public final LVar targetVar;
+        
+        public StackPopI(LNestedLogicStatement stmt, LAssembler builder) {
+            super(stmt, builder);
+            
+            LVar target = stmt.p1.isEmpty() ? null : builder.var(stmt.p1);
+            targetVar = target != null && !target.constant ? target : null;
+        }
+        
+        @Override
+        public void run(LExecutor exec) {
+            if (targetVar == null) {
+                log("目标变量 @ 不存在", p1);
+                return;
+            }
+            
+            int index = index();
+            
+            // 不创建新栈，栈不存在时直接返回null
+            CallStack stack = stack(false);
+            if (stack == null) {
+                log("栈 \"@\" 为空，无法读取值", stackName());
+                targetVar.isobj = true;
+                targetVar.objval = null;
+                return;
+            }
+            
+            // 并发模式下获取栈锁，单线程模式不加锁
+            boolean locked = concurrent;
+            if (locked) stack.lock.lock();
+            try {
+                if (stack.isEmpty()) {
+                    log("栈 \"@\" 为空，无法读取值", stack.name);
+                    // 将目标变量设置为null
+                    targetVar.isobj = true;
+                    targetVar.objval = null;
+                    return;
+                }
+                
+                // 查找指定索引的元素
+                int slot = stack.slot(index);
+                
+                if (slot != -1) {
+                    stack.read(slot, targetVar);
+                    if (LELog.enabled()) log("从栈 \"" + stack.name + "\" 的索引 " + index + " 读取值 " + stack.value(slot) + " 到变量 " + p1);
+                } else {
+                    if (LELog.enabled()) log("栈 \"" + stack.name + "\" 中不存在索引为 " + index + " 的元素");
+                    // 将目标变量设置为null
+                    targetVar.isobj = true;
+                    targetVar.objval = null;
+                }
+            } finally {
+                if (locked) stack.lock.unlock();
+            }
+        }
     }
 }
\ No newline at end of file
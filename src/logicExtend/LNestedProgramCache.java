@@ -0,0 +1,105 @@
+package logicExtend;
+
+import arc.struct.Seq;
+import mindustry.logic.LAssembler;
+import mindustry.logic.LExecutor;
+import mindustry.logic.LStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 嵌套逻辑程序缓存，按嵌套代码内容寻址（LRU）
+ * 同一份嵌套代码只解析一次，解析出的语句在所有call调用点之间共享，
+ * 每个调用点只在此基础上构建自己的变量和指令
+ */
+public class LNestedProgramCache {
+
+    /** 缓存容量上限，超过后淘汰最久未使用的程序 */
+    public static int capacity = 256;
+
+    /** 命中次数 */
+    public static long hits = 0;
+    /** 未命中次数 */
+    public static long misses = 0;
+    /** 淘汰次数 */
+    public static long evictions = 0;
+
+    /** 已解析的嵌套程序，key为嵌套代码的64位哈希，按访问顺序排列 */
+    private static final LinkedHashMap<Long, Program> programs = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Program> eldest) {
+            if (size() > capacity) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /** 解析后的嵌套程序，语句列表只读，可被多个调用点共享 */
+    public static class Program {
+        public final String source;
+        public final Seq<LStatement> statements;
+
+        Program(String source, Seq<LStatement> statements) {
+            this.source = source;
+            this.statements = statements;
+        }
+
+        /** 为一个调用点构建独立的变量表和指令 */
+        public LAssembler assemble() {
+            LAssembler asm = new LAssembler();
+            asm.instructions = statements.map(st -> st.build(asm)).retainAll(i -> i != null).toArray(LExecutor.LInstruction.class);
+            return asm;
+        }
+    }
+
+    /** 获取嵌套代码对应的程序，不存在时解析并加入缓存 */
+    public static synchronized Program get(String source) {
+        if (source == null) source = "";
+        long key = hash(source);
+
+        Program program = programs.get(key);
+        // 哈希冲突时按未命中处理，新程序会覆盖旧条目
+        if (program != null && program.source.equals(source)) {
+            hits++;
+            return program;
+        }
+
+        misses++;
+        program = new Program(source, LAssembler.read(source, false));
+        programs.put(key, program);
+        return program;
+    }
+
+    /** 编译嵌套代码，得到调用点独立的LAssembler */
+    public static LAssembler assemble(String source) {
+        return get(source).assemble();
+    }
+
+    /** 清空缓存 */
+    public static synchronized void clear() {
+        programs.clear();
+    }
+
+    /** 当前缓存的程序数量 */
+    public static synchronized int size() {
+        return programs.size();
+    }
+
+    /** 缓存统计信息 */
+    public static synchronized String stats() {
+        return "程序数: " + programs.size() + "/" + capacity + "，命中: " + hits + "，未命中: " + misses + "，淘汰: " + evictions;
+    }
+
+    /** FNV-1a 64位哈希 */
+    private static long hash(String source) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) {
+            h ^= source.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
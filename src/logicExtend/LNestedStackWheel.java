@@ -0,0 +1,169 @@
+package logicExtend;
+
+import arc.struct.LongSeq;
+import arc.struct.Seq;
+
+import static mindustry.Vars.*;
+
+/**
+ * 栈元素超时回收的哈希时间轮，按游戏tick（state.tick）推进
+ * 每个非空栈在时间轮中登记一次，到期tick为栈内最早元素的超时时间；
+ * 到期时只从表头移除已超时的元素，再按新的表头重新登记，
+ * 因此每个元素的回收开销均摊为O(1)，不再需要定时全量扫描所有栈
+ */
+public class LNestedStackWheel {
+
+    /** 时间轮槽数，必须为2的幂 */
+    private static final int wheelSize = 512;
+    private static final int mask = wheelSize - 1;
+
+    @SuppressWarnings("unchecked")
+    private static final Seq<LNestedLogic.CallStack>[] bucketStacks = new Seq[wheelSize];
+    private static final LongSeq[] bucketDeadlines = new LongSeq[wheelSize];
+
+    /** 到期待处理的栈，复用以避免分配 */
+    private static final Seq<LNestedLogic.CallStack> due = new Seq<>();
+
+    /** 时间轮锁，仅在并发模式下使用 */
+    private static final Object wheelLock = new Object();
+
+    /** 已处理到的tick */
+    private static long currentTick = -1;
+
+    /** 元素超时时间（tick），每次推进时从设置中刷新 */
+    public static long timeout = LNestedLogic.elementTimeout * 60L;
+
+    /** 累计回收的元素数量 */
+    public static long expired = 0;
+
+    static {
+        for (int i = 0; i < wheelSize; i++) {
+            bucketStacks[i] = new Seq<>(false, 4);
+            bucketDeadlines[i] = new LongSeq(false, 4);
+        }
+    }
+
+    /** 登记栈的到期tick，已登记更早的到期tick时忽略；调用方需持有栈锁 */
+    public static void schedule(LNestedLogic.CallStack stack, long deadline) {
+        if (stack.wheelDeadline != -1 && stack.wheelDeadline <= deadline) return;
+
+        if (LNestedLogic.concurrent) {
+            synchronized (wheelLock) {
+                add(stack, deadline);
+            }
+        } else {
+            add(stack, deadline);
+        }
+    }
+
+    private static void add(LNestedLogic.CallStack stack, long deadline) {
+        if (stack.wheelDeadline != -1 && stack.wheelDeadline <= deadline) return;
+        // 旧的登记项会在到期时因到期tick不匹配而被丢弃
+        stack.wheelDeadline = deadline;
+        int bucket = (int) (deadline & mask);
+        bucketStacks[bucket].add(stack);
+        bucketDeadlines[bucket].add(deadline);
+    }
+
+    /** 推进时间轮到当前游戏tick，由Trigger.update调用 */
+    public static void advance() {
+        timeout = LNestedLogic.timeoutTicks();
+        long now = (long) state.tick;
+
+        if (currentTick == -1 || now < currentTick) {
+            // 首次运行或游戏时间倒退（读取存档/切换地图），重新登记所有栈
+            rebase(now);
+            return;
+        }
+        if (now == currentTick) return;
+
+        boolean concurrent = LNestedLogic.concurrent;
+        if (concurrent) {
+            synchronized (wheelLock) {
+                collect(now);
+            }
+        } else {
+            collect(now);
+        }
+
+        for (int i = 0; i < due.size; i++) {
+            expire(due.get(i), now);
+        }
+        due.clear();
+    }
+
+    /** 收集(currentTick, now]之间到期的栈 */
+    private static void collect(long now) {
+        // 跨度超过一圈时每个槽只需处理一次
+        long from = Math.max(currentTick + 1, now - mask);
+        for (long tick = from; tick <= now; tick++) {
+            int bucket = (int) (tick & mask);
+            Seq<LNestedLogic.CallStack> stacks = bucketStacks[bucket];
+            LongSeq deadlines = bucketDeadlines[bucket];
+
+            for (int i = 0; i < stacks.size; ) {
+                long deadline = deadlines.items[i];
+                if (deadline > now) {
+                    // 属于之后的轮次
+                    i++;
+                    continue;
+                }
+                LNestedLogic.CallStack stack = stacks.get(i);
+                stacks.remove(i);
+                deadlines.removeIndex(i);
+                // 到期tick不匹配说明该登记项已过期
+                if (stack.wheelDeadline == deadline) {
+                    stack.wheelDeadline = -1;
+                    due.add(stack);
+                }
+            }
+        }
+        currentTick = now;
+    }
+
+    /** 回收栈内已超时的元素，栈非空时按新的表头重新登记 */
+    private static void expire(LNestedLogic.CallStack stack, long now) {
+        boolean locked = LNestedLogic.concurrent;
+        if (locked) stack.lock.lock();
+        try {
+            if (stack.removed) return;
+            expired += stack.expire(now - timeout);
+            if (stack.isEmpty()) {
+                LNestedLogic.removeIfEmpty(stack);
+            } else {
+                schedule(stack, stack.oldest() + timeout);
+            }
+        } finally {
+            if (locked) stack.lock.unlock();
+        }
+    }
+
+    /** 丢弃所有登记项，把现有元素的push时间重置为now并重新登记 */
+    private static void rebase(long now) {
+        Seq<LNestedLogic.CallStack> all = LNestedLogic.allStacks();
+
+        synchronized (wheelLock) {
+            for (int i = 0; i < wheelSize; i++) {
+                bucketStacks[i].clear();
+                bucketDeadlines[i].clear();
+            }
+            currentTick = now;
+        }
+
+        boolean locked = LNestedLogic.concurrent;
+        for (LNestedLogic.CallStack stack : all) {
+            if (locked) stack.lock.lock();
+            try {
+                stack.wheelDeadline = -1;
+                if (stack.isEmpty()) {
+                    LNestedLogic.removeIfEmpty(stack);
+                } else {
+                    stack.restamp(now);
+                    schedule(stack, now + timeout);
+                }
+            } finally {
+                if (locked) stack.lock.unlock();
+            }
+        }
+    }
+}
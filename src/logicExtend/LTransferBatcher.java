@@ -0,0 +1,183 @@
+package logicExtend;
+
+import arc.Events;
+import arc.math.Mathf;
+import arc.struct.IntMap;
+import arc.struct.Seq;
+import arc.util.Time;
+import mindustry.game.EventType;
+import mindustry.gen.Building;
+import mindustry.gen.Call;
+import mindustry.gen.Groups;
+import mindustry.gen.Unit;
+import mindustry.input.InputHandler;
+import mindustry.type.Item;
+
+import static mindustry.Vars.*;
+
+/**
+ * 物品转移合批发送
+ * fastunitcontrol没有CD，每次itemTake/itemDrop都调用一次远程方法，多人游戏中会产生大量数据包。
+ * 服务端在本地立即执行转移，并把同一单位连续对同一建筑的同类转移合并，
+ * 每tick只向客户端发送一个数据包，客户端收到后按相同顺序在本地重放，最终状态与逐次调用一致。
+ * 取物时服务端只修改库存，不调用InputHandler.takeItems（它会为每次取物发送最多8个transferItemEffect数据包），
+ * 物品转移特效由客户端重放合批数据包时在本地播放
+ */
+public class LTransferBatcher {
+
+    /** 数据包类型 */
+    public static final String PACKET = "logicextend-transfer";
+    /** 单个数据包的最大字符数，超过时拆分 */
+    private static final int MAX_PACKET_LENGTH = 16000;
+
+    /** 累计合并掉的转移次数 */
+    public static long coalesced = 0;
+    /** 累计发送的数据包数 */
+    public static long packets = 0;
+
+    /** 一次（合并后的）转移 */
+    private static class Transfer {
+        /** true为从建筑取物，false为放入建筑 */
+        boolean take;
+        int unit, pos, amount;
+        short item;
+    }
+
+    /** 本tick的转移，按发生顺序排列；对象跨tick复用 */
+    private static final Seq<Transfer> transfers = new Seq<>();
+    private static int count = 0;
+    /** 单位id -> 该单位本tick最近一次转移，用于合并 */
+    private static final IntMap<Transfer> last = new IntMap<>();
+    private static final StringBuilder builder = new StringBuilder();
+
+    /** 注册数据包处理和每tick发送 */
+    public static void init() {
+        // 专用服务端没有netClient
+        if (netClient != null) netClient.addPacketHandler(PACKET, LTransferBatcher::replay);
+        Events.run(EventType.Trigger.update, LTransferBatcher::flush);
+        Events.on(EventType.ResetEvent.class, e -> clear());
+    }
+
+    /** 从建筑中取出物品到单位，替代Call.takeItems */
+    public static void takeItems(Building build, Item item, int amount, Unit to) {
+        if (!net.active()) {
+            Call.takeItems(build, item, amount, to);
+            return;
+        }
+        if (net.client()) return;
+        int removed = take(build, item, amount, to);
+        if (removed > 0) record(true, to, build, item, removed);
+    }
+
+    /** 修改库存并在本地播放特效，与InputHandler.takeItems相同，但不发送特效数据包；返回实际取出的数量 */
+    private static int take(Building build, Item item, int amount, Unit to) {
+        if (to == null || build == null || build.items == null) return 0;
+        int removed = build.removeStack(item, Math.min(to.maxAccepted(item), amount));
+        if (removed == 0) return 0;
+        to.addItem(item, removed);
+        if (!headless) {
+            for (int j = 0; j < Mathf.clamp(removed / 3, 1, 8); j++) {
+                Time.run(j * 3f, () -> InputHandler.createItemTransfer(item, 1, build.x, build.y, to, null));
+            }
+        }
+        return removed;
+    }
+
+    /** 把单位的物品放入建筑，替代Call.transferItemTo */
+    public static void transferItemTo(Unit unit, Item item, int amount, float x, float y, Building build) {
+        if (!net.active()) {
+            Call.transferItemTo(unit, item, amount, x, y, build);
+            return;
+        }
+        if (net.client()) return;
+        InputHandler.transferItemTo(unit, item, amount, x, y, build);
+        record(false, unit, build, item, amount);
+    }
+
+    private static void record(boolean take, Unit unit, Building build, Item item, int amount) {
+        Transfer prev = last.get(unit.id());
+        // 只有单位最近一次转移是对同一建筑的同类转移时才合并，中间有其他转移时保持顺序，客户端重放结果一致
+        if (prev != null && prev.pos == build.pos() && prev.take == take && prev.item == item.id) {
+            prev.amount += amount;
+            coalesced++;
+            return;
+        }
+
+        Transfer transfer;
+        if (count < transfers.size) {
+            transfer = transfers.get(count);
+        } else {
+            transfer = new Transfer();
+            transfers.add(transfer);
+        }
+        count++;
+        transfer.take = take;
+        transfer.unit = unit.id();
+        transfer.pos = build.pos();
+        transfer.item = item.id;
+        transfer.amount = amount;
+        last.put(unit.id(), transfer);
+    }
+
+    /** 发送本tick的转移 */
+    private static void flush() {
+        if (count == 0) return;
+        if (net.server()) {
+            builder.setLength(0);
+            for (int i = 0; i < count; i++) {
+                Transfer t = transfers.get(i);
+                if (builder.length() > MAX_PACKET_LENGTH) {
+                    send();
+                }
+                if (builder.length() > 0) builder.append(';');
+                builder.append(t.take ? 't' : 'd')
+                    .append(Integer.toString(t.unit, 36)).append(',')
+                    .append(Integer.toString(t.pos, 36)).append(',')
+                    .append(Integer.toString(t.item, 36)).append(',')
+                    .append(Integer.toString(t.amount, 36));
+            }
+            send();
+        }
+        clear();
+    }
+
+    private static void send() {
+        if (builder.length() == 0) return;
+        Call.clientPacketReliable(PACKET, builder.toString());
+        builder.setLength(0);
+        packets++;
+    }
+
+    private static void clear() {
+        count = 0;
+        last.clear();
+    }
+
+    /** 客户端重放转移：修改库存并在本地播放物品转移特效，不产生任何数据包 */
+    private static void replay(String data) {
+        int start = 0;
+        while (start < data.length()) {
+            int end = data.indexOf(';', start);
+            if (end == -1) end = data.length();
+            try {
+                boolean take = data.charAt(start) == 't';
+                String[] parts = data.substring(start + 1, end).split(",");
+                Unit unit = Groups.unit.getByID(Integer.parseInt(parts[0], 36));
+                Building build = world.build(Integer.parseInt(parts[1], 36));
+                Item item = content.item(Integer.parseInt(parts[2], 36));
+                int amount = Integer.parseInt(parts[3], 36);
+                if (unit != null && build != null && item != null) {
+                    if (take) {
+                        take(build, item, amount, unit);
+                    } else {
+                        // transferItemTo的特效只在本地播放，不会发送数据包
+                        InputHandler.transferItemTo(unit, item, amount, unit.x, unit.y, build);
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (LELog.enabled()) LELog.debug("物品转移数据包解析失败: @", e.getMessage());
+            }
+            start = end + 1;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package logicExtend;
+
+import arc.Core;
+import arc.Events;
+import arc.struct.LongMap;
+import arc.struct.ObjectMap;
+import arc.struct.Queue;
+import mindustry.game.EventType;
+import mindustry.game.Team;
+import mindustry.gen.Building;
+import mindustry.gen.Unit;
+import mindustry.logic.LExecutor;
+
+import static mindustry.Vars.state;
+
+/**
+ * 无CD单位控制的转移预算（令牌桶），分别按队伍和按处理器限制物品/载荷操作的频率
+ * 超出预算的操作不会丢弃，而是推迟到下一tick执行（届时重新检查条件），并计入限流次数；
+ * 同一处理器对同一单位和建筑的推迟操作只保留最新的一个，每个处理器的推迟数量有上限，
+ * 超出时拒绝该处理器的新操作，不会挤掉其他处理器或队伍的操作；预算为0表示不限制
+ */
+public class LTransferBudget {
+
+    /** 队伍每tick的操作预算设置项 */
+    public static final String TEAM_SETTING = "lnestedlogic-transfer-team-budget";
+    /** 处理器每tick的操作预算设置项 */
+    public static final String PROCESSOR_SETTING = "lnestedlogic-transfer-processor-budget";
+
+    /** 队伍、处理器每tick补充的令牌数，0为不限制 */
+    public static int teamRate = 0, processorRate = 0;
+    /** 令牌桶容量为每tick补充量的倍数，允许短时间的突发 */
+    public static int burstTicks = 4;
+    /** 推迟队列的总上限，超出时拒绝新的操作并计数 */
+    public static int maxDeferred = 4096;
+    /** 单个处理器推迟操作的上限，超出时拒绝该处理器新的操作并计数 */
+    public static int maxDeferredPerOwner = 256;
+
+    /** 累计被推迟的操作数 */
+    public static long throttled = 0;
+    /** 累计在之后的tick中执行的推迟操作数 */
+    public static long resumed = 0;
+    /** 累计因推迟数量达到上限而拒绝的操作数 */
+    public static long dropped = 0;
+    /** 累计被同一处理器对同一单位和建筑的新操作替换的推迟操作数 */
+    public static long coalesced = 0;
+
+    /** 令牌桶 */
+    private static class Bucket {
+        float tokens;
+        long tick = -1;
+
+        /** 按经过的tick补充令牌，够用时消耗一个 */
+        boolean take(int rate, long now) {
+            if (tick != now) {
+                float cap = rate * (float)burstTicks;
+                tokens = tick < 0 || now < tick ? cap : Math.min(cap, tokens + rate * (float)(now - tick));
+                tick = now;
+            }
+            if (tokens < 1f) return false;
+            tokens -= 1f;
+            return true;
+        }
+    }
+
+    /** 被推迟的操作 */
+    private static class Deferred {
+        Team team;
+        Building owner;
+        /** 所属处理器（没有处理器时为队伍）和(单位id, 建筑位置)，用于合并 */
+        Object ownerKey;
+        long key;
+        Runnable action;
+    }
+
+    private static final Bucket[] teamBuckets = new Bucket[Team.all.length];
+    private static final ObjectMap<Building, Bucket> processorBuckets = new ObjectMap<>();
+    /** 推迟的操作，按推迟顺序排列 */
+    private static final Queue<Deferred> deferred = new Queue<>();
+    /** 处理器 -> (单位id, 建筑位置) -> 该处理器尚未执行的推迟操作 */
+    private static final ObjectMap<Object, LongMap<Deferred>> pending = new ObjectMap<>();
+    private static long nextCleanup = 0;
+
+    /** 读取设置并注册每tick的推迟操作执行和清理 */
+    public static void init() {
+        teamRate = Core.settings.getInt(TEAM_SETTING, 0);
+        processorRate = Core.settings.getInt(PROCESSOR_SETTING, 0);
+        Events.run(EventType.Trigger.update, LTransferBudget::update);
+        Events.on(EventType.ResetEvent.class, e -> {
+            for (int i = 0; i < teamBuckets.length; i++) teamBuckets[i] = null;
+            processorBuckets.clear();
+            deferred.clear();
+            pending.clear();
+            nextCleanup = 0;
+        });
+    }
+
+    /** 申请一次操作的预算 */
+    public static boolean tryAcquire(LExecutor exec) {
+        if (teamRate <= 0 && processorRate <= 0) return true;
+        return tryAcquire(exec.team, exec.build);
+    }
+
+    /** 把预算不够的操作推迟到下一tick，unit和target标识操作对象，同一处理器对相同对象的操作只保留最新的一个 */
+    public static void defer(LExecutor exec, Unit unit, Building target, Runnable action) {
+        defer(exec.team, exec.build, unit, target, action);
+    }
+
+    /** 限流统计信息 */
+    public static String stats() {
+        return "推迟: " + throttled + "，已执行: " + resumed + "，合并: " + coalesced + "，拒绝: " + dropped + "，排队: " + deferred.size;
+    }
+
+    private static boolean tryAcquire(Team team, Building owner) {
+        long now = (long)state.tick;
+        Bucket teamBucket = null;
+        if (teamRate > 0 && team != null) {
+            teamBucket = teamBuckets[team.id];
+            if (teamBucket == null) teamBucket = teamBuckets[team.id] = new Bucket();
+        }
+        Bucket processorBucket = null;
+        if (processorRate > 0 && owner != null) {
+            processorBucket = processorBuckets.get(owner);
+            if (processorBucket == null) {
+                processorBucket = new Bucket();
+                processorBuckets.put(owner, processorBucket);
+            }
+        }
+
+        // 两个桶都有令牌时才消耗，避免只扣掉其中一个
+        if (processorBucket != null && !processorBucket.take(processorRate, now)) return false;
+        if (teamBucket != null && !teamBucket.take(teamRate, now)) {
+            if (processorBucket != null) processorBucket.tokens += 1f;
+            return false;
+        }
+        return true;
+    }
+
+    private static void defer(Team team, Building owner, Unit unit, Building target, Runnable action) {
+        throttled++;
+        Object ownerKey = owner != null ? owner : team;
+        long key = ((long)unit.id() << 32) | (target != null ? target.pos() & 0xffffffffL : 0xffffffffL);
+        LongMap<Deferred> owned = pending.get(ownerKey);
+        Deferred d = owned == null ? null : owned.get(key);
+        if (d != null) {
+            // 同一对象已有推迟的操作，只保留最新的，排队位置不变
+            d.action = action;
+            coalesced++;
+            return;
+        }
+        // 推迟过多时拒绝本处理器的新操作，不影响其他处理器已排队的操作
+        if (deferred.size >= maxDeferred || (owned != null && owned.size >= maxDeferredPerOwner)) {
+            dropped++;
+            return;
+        }
+        if (owned == null) {
+            owned = new LongMap<>();
+            pending.put(ownerKey, owned);
+        }
+        d = new Deferred();
+        d.team = team;
+        d.owner = owner;
+        d.ownerKey = ownerKey;
+        d.key = key;
+        d.action = action;
+        owned.put(key, d);
+        deferred.addLast(d);
+    }
+
+    /** 推迟的操作已执行或被放弃，移出合并表 */
+    private static void release(Deferred d) {
+        LongMap<Deferred> owned = pending.get(d.ownerKey);
+        if (owned == null) return;
+        owned.remove(d.key);
+        if (owned.isEmpty()) pending.remove(d.ownerKey);
+    }
+
+    /** 每tick开始时先执行推迟的操作，预算仍然不够的继续推迟 */
+    private static void update() {
+        long now = (long)state.tick;
+        if (now >= nextCleanup) {
+            nextCleanup = now + 600;
+            ObjectMap.Keys<Building> keys = processorBuckets.keys();
+            while (keys.hasNext()) {
+                if (!keys.next().isValid()) keys.remove();
+            }
+        }
+
+        // 只处理本tick开始时已在队列中的操作，预算仍然不够的放回队尾
+        for (int i = deferred.size; i > 0; i--) {
+            Deferred d = deferred.removeFirst();
+            // 所属处理器已失效的操作不再执行
+            if (d.owner != null && !d.owner.isValid()) {
+                release(d);
+                continue;
+            }
+            if (tryAcquire(d.team, d.owner)) {
+                release(d);
+                d.action.run();
+                resumed++;
+            } else {
+                deferred.addLast(d);
+            }
+        }
+    }
+}
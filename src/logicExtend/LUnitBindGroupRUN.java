@@ -1,32 +1,341 @@
 package logicExtend;
 
 import arc.Core;
+import arc.Events;
+import arc.struct.IntMap;
+import arc.struct.IntSet;
 import arc.struct.Seq;
 import arc.struct.ObjectMap;
+import mindustry.game.EventType;
+import mindustry.game.Team;
+import mindustry.gen.Groups;
 import mindustry.gen.Unit;
 import mindustry.gen.Building;
 import mindustry.type.UnitType;
 import mindustry.logic.LExecutor;
 import mindustry.logic.LVar;
 import mindustry.ai.types.LogicAI;
-import mindustry.ai.types.CommandAI;
+import mindustry.core.World;
+import mindustry.world.blocks.logic.LogicBlock;
+import logicExtend.LUnitBindGroupUI.BindOrder;
+import logicExtend.LUnitBindGroupUI.FetchMode;
+
+import static mindustry.Vars.content;
+import static mindustry.Vars.state;
+import static mindustry.Vars.world;
 
 //单位绑定组指令执行器实现类
 public class LUnitBindGroupRUN {
     //单位池数据结构
     public static class UnitPool {
         public Seq<Unit> units = new Seq<>();
+        // 池内单位id，用于O(1)判断成员和去重
+        public IntSet ids = new IntSet();
         public boolean isUsed = false;
         public int currentIndex = 0;
         public UnitType type;
         public Building controller; // 控制者属性
+        // 最近一次执行使用的控制方检查模式
+        public int mode = 2;
+        // 补充单位时的选择顺序及nearest顺序的参考点
+        public BindOrder order = BindOrder.any;
+        public float nearX, nearY;
+        // health/distance取出方式使用的堆，首次使用时创建，取出方式改变时重建
+        public LUnitPoolHeap heap;
+        public FetchMode heapMode;
+        // 是否为多个处理器共享的命名单位组
+        public boolean shared = false;
+        // 共享单位组的名称、队伍、最近一次维护和使用的tick
+        public String name;
+        public Team team;
+        public long maintainedTick = -1, usedTick;
+        
+        /** 加入单位，已在池中时返回false */
+        public boolean add(Unit unit) {
+            if (!ids.add(unit.id())) return false;
+            units.add(unit);
+            unitOwners.put(unit.id(), this);
+            if (heap != null) heap.add(unit, heapKey(unit));
+            return true;
+        }
+        
+        /** 单位在堆中的键值：生命值或到参考点的距离平方 */
+        float heapKey(Unit unit) {
+            return heapMode == FetchMode.health ? unit.health : unit.dst2(nearX, nearY);
+        }
+        
+        /** 获取指定取出方式的堆，不存在或方式改变时用池中单位重建 */
+        LUnitPoolHeap heap(FetchMode mode) {
+            if (heap == null) heap = new LUnitPoolHeap();
+            if (heapMode != mode) {
+                heapMode = mode;
+                heap.clear();
+                for (Unit unit : units) heap.add(unit, heapKey(unit));
+            }
+            return heap;
+        }
+        
+        /** 移出单位（不改变单位的控制方） */
+        public boolean remove(Unit unit) {
+            if (!ids.remove(unit.id())) return false;
+            int index = units.indexOf(unit, true);
+            if (index != -1) removeIndex(index);
+            else if (heap != null) heap.remove(unit);
+            if (unitOwners.get(unit.id()) == this) unitOwners.remove(unit.id());
+            return true;
+        }
+        
+        /** 按位置移出单位，保持其余单位的顺序 */
+        void removeIndex(int index) {
+            Unit unit = units.remove(index);
+            ids.remove(unit.id());
+            if (heap != null) heap.remove(unit);
+            if (unitOwners.get(unit.id()) == this) unitOwners.remove(unit.id());
+            // 移除位置在当前索引之前时，当前索引随之前移，保证不跳过单位
+            if (index < currentIndex) currentIndex--;
+        }
+        
+        /** 解绑并移出所有单位 */
+        public void releaseAll(LExecutor exec) {
+            for (Unit unit : units) {
+                if (unitOwners.get(unit.id()) == this) unitOwners.remove(unit.id());
+                releaseUnit(exec, this, unit);
+            }
+            units.clear();
+            ids.clear();
+            if (heap != null) heap.clear();
+            currentIndex = 0;
+        }
+    }
+    
+    // 执行器 -> 单位池，按执行器对象本身区分（LExecutor未重写equals/hashCode），不同执行器不会共用单位池
+    static final ObjectMap<LExecutor, UnitPool> executorPools = new ObjectMap<>();
+    // 所属处理器 -> 该处理器下拥有单位池的执行器（包括嵌套call的执行器）
+    private static final ObjectMap<Building, Seq<LExecutor>> ownerExecutors = new ObjectMap<>();
+    // 累计被淘汰的单位池数量
+    public static long evictedPools = 0;
+    // 队伍id -> 组名 -> 共享单位组
+    static final IntMap<ObjectMap<String, UnitPool>> sharedGroups = new IntMap<>();
+    // 共享单位组超过该时间（tick）没有被任何处理器使用时释放
+    public static long sharedIdleTicks = 600;
+    // 下一次检查空闲共享单位组的tick
+    private static long nextIdleCheck = 0;
+    // nearest顺序的初始搜索半径（世界单位），每轮翻倍
+    public static float nearSearchRadius = 8f * 8f;
+    // nearest顺序的候选单位临时列表
+    private static final Seq<Unit> nearCandidates = new Seq<>();
+    // 单位id -> 所在的单位池，用于单位死亡/被玩家接管时直接从所在池中移除
+    private static final IntMap<UnitPool> unitOwners = new IntMap<>();
+    
+    /** 注册单位池的维护事件，单位池成员由事件增量维护，执行时不再整池检查 */
+    public static void init() {
+        LUnitFreeIndex.init();
+        LUnitLeases.init();
+        // 单位死亡：从所在池中移除
+        Events.on(EventType.UnitDestroyEvent.class, e -> {
+            UnitPool pool = unitOwners.remove(e.unit.id());
+            if (pool != null) pool.remove(e.unit);
+        });
+        // 玩家接管单位：模式2、3下移出所在池（模式1不检查控制方）
+        Events.on(EventType.UnitControlEvent.class, e -> {
+            if (e.unit == null) return;
+            UnitPool pool = unitOwners.get(e.unit.id());
+            if (pool != null && pool.mode != 1) pool.remove(e.unit);
+        });
+        // 处理器被拆除/摧毁：释放其下所有单位池绑定的单位
+        Events.on(EventType.TilePreChangeEvent.class, e -> {
+            if (e.tile.build instanceof LogicBlock.LogicBuild build) {
+                evictOwner(build);
+            }
+        });
+        // 世界重置：所有单位池失效，单位随世界一起卸载，无需逐个解绑
+        Events.on(EventType.ResetEvent.class, e -> {
+            evictedPools += executorPools.size;
+            executorPools.clear();
+            ownerExecutors.clear();
+            sharedGroups.clear();
+            unitOwners.clear();
+            nextIdleCheck = 0;
+        });
+        // 定期释放长时间无人使用的共享单位组
+        Events.run(EventType.Trigger.update, LUnitBindGroupRUN::releaseIdleGroups);
+    }
+    
+    /** 获取队伍的命名共享单位组，create为false且不存在时返回null */
+    public static UnitPool sharedGroup(Team team, String name, boolean create) {
+        ObjectMap<String, UnitPool> groups = sharedGroups.get(team.id);
+        if (groups == null) {
+            if (!create) return null;
+            groups = new ObjectMap<>();
+            sharedGroups.put(team.id, groups);
+        }
+        UnitPool pool = groups.get(name);
+        if (pool == null && create) {
+            pool = new UnitPool();
+            pool.shared = true;
+            pool.name = name;
+            pool.team = team;
+            groups.put(name, pool);
+            // 读取存档后第一次使用时恢复保存的单位
+            LESaveChunk.SavedPool saved = LESaveChunk.takeGroupPool(team, name);
+            if (saved != null) restoreUnits(null, pool, saved);
+        }
+        return pool;
+    }
+    
+    /** 执行器使用的单位池：group为非空字符串时为命名共享单位组，否则为执行器自己的单位池；不存在时返回null */
+    public static UnitPool poolOf(LExecutor exec, LVar group) {
+        String name = groupName(group);
+        return name != null ? sharedGroup(exec.team, name, false) : poolOf(exec);
+    }
+    
+    /** 共享单位组名，不是非空字符串时返回null */
+    static String groupName(LVar group) {
+        return group != null && group.isobj && group.objval instanceof String name && !name.isEmpty() ? name : null;
+    }
+    
+    /** 释放超过sharedIdleTicks没有被使用的共享单位组，每60tick检查一次 */
+    private static void releaseIdleGroups() {
+        long now = (long)state.tick;
+        if (now < nextIdleCheck || sharedGroups.isEmpty()) return;
+        nextIdleCheck = now + 60;
+        for (ObjectMap<String, UnitPool> groups : sharedGroups.values()) {
+            ObjectMap.Values<UnitPool> it = groups.values();
+            while (it.hasNext()) {
+                UnitPool pool = it.next();
+                if (now - pool.usedTick > sharedIdleTicks) {
+                    pool.releaseAll(null);
+                    it.remove();
+                    evictedPools++;
+                }
+            }
+        }
+    }
+    
+    /** 获取执行器的单位池，不存在时创建并登记所属处理器 */
+    private static UnitPool getPool(LExecutor exec) {
+        UnitPool pool = executorPools.get(exec);
+        if (pool == null) {
+            pool = new UnitPool();
+            executorPools.put(exec, pool);
+            if (exec.build != null) {
+                ownerExecutors.get(exec.build, Seq::new).add(exec);
+            }
+            // 读取存档后第一次使用时恢复保存的单位
+            LESaveChunk.SavedPool saved = LESaveChunk.takeProcessorPool(exec);
+            if (saved != null) restoreUnits(exec, pool, saved);
+        }
+        return pool;
+    }
+    
+    /** 恢复嵌套执行器保存的单位池 */
+    public static void restorePool(LExecutor exec, LESaveChunk.SavedPool saved) {
+        UnitPool pool = executorPools.get(exec);
+        if (pool == null) {
+            pool = new UnitPool();
+            executorPools.put(exec, pool);
+            if (exec.build != null) {
+                ownerExecutors.get(exec.build, Seq::new).add(exec);
+            }
+        }
+        restoreUnits(exec, pool, saved);
+    }
+    
+    /** 按保存的单位id重新绑定单位，不再扫描队伍单位；已不存在或已被其他控制方接管的单位跳过 */
+    private static void restoreUnits(LExecutor exec, UnitPool pool, LESaveChunk.SavedPool saved) {
+        UnitType type = content.unit(saved.type);
+        if (type == null) return;
+        pool.type = type;
+        pool.mode = saved.mode;
+        pool.order = BindOrder.values()[Math.min(saved.order, BindOrder.values().length - 1)];
+        pool.nearX = saved.nearX;
+        pool.nearY = saved.nearY;
+        Team team = exec != null ? exec.team : pool.team;
+        
+        for (int i = 0; i < saved.units.size; i++) {
+            Unit unit = Groups.unit.getByID(saved.units.get(i));
+            if (unit == null || !unit.isValid() || unit.type != type || unit.team != team) continue;
+            // 存档中的逻辑控制不会保留，单位读取后为默认控制方
+            if (!(unit.controller() instanceof LogicAI) && !LUnitFreeIndex.isFree(unit)) continue;
+            if (!LUnitLeases.acquire(unit, leaseHolder(exec, pool))) continue;
+            preControlUnit(exec, unit);
+            pool.add(unit);
+        }
+        pool.currentIndex = pool.units.isEmpty() ? 0 : saved.currentIndex % pool.units.size;
+        pool.isUsed = !pool.units.isEmpty();
+        if (LELog.enabled()) LELog.debug("恢复单位池：@/@ 个单位", pool.units.size, saved.units.size);
+    }
+    
+    /** 获取执行器已有的单位池，没有时返回null */
+    public static UnitPool poolOf(LExecutor exec) {
+        return executorPools.get(exec);
+    }
+    
+    /** 释放执行器的单位池（嵌套执行器被淘汰时调用） */
+    public static void releaseExecutor(LExecutor exec) {
+        UnitPool pool = executorPools.remove(exec);
+        if (pool == null) return;
+        pool.releaseAll(exec);
+        evictedPools++;
+        if (exec.build != null) {
+            Seq<LExecutor> execs = ownerExecutors.get(exec.build);
+            if (execs != null) {
+                execs.remove(exec, true);
+                if (execs.isEmpty()) ownerExecutors.remove(exec.build);
+            }
+        }
     }
     
-    // 使用执行器哈希值作为key，存储每个执行器的单位池
-    private static final ObjectMap<Integer, UnitPool> executorPools = new ObjectMap<>();
+    /** 释放处理器下所有执行器的单位池 */
+    public static void evictOwner(Building owner) {
+        Seq<LExecutor> execs = ownerExecutors.remove(owner);
+        if (execs == null) return;
+        int units = 0;
+        for (LExecutor exec : execs) {
+            UnitPool pool = executorPools.remove(exec);
+            if (pool == null) continue;
+            units += pool.units.size;
+            pool.releaseAll(exec);
+            evictedPools++;
+        }
+        if (LELog.enabled()) LELog.debug("处理器移除，释放 @ 个单位池，共 @ 个单位", execs.size, units);
+    }
+    
+    /** 存活的单位池数量 */
+    public static int livePools() {
+        return executorPools.size;
+    }
+    
+    /** 单位池中绑定的单位总数 */
+    public static int boundUnits() {
+        return unitOwners.size;
+    }
+    
+    /** 单位池统计信息 */
+    public static String stats() {
+        int groups = 0;
+        for (ObjectMap<String, UnitPool> g : sharedGroups.values()) groups += g.size;
+        return "单位池: " + executorPools.size + "，共享单位组: " + groups + "，处理器: " + ownerExecutors.size + "，绑定单位: " + unitOwners.size + "，已淘汰: " + evictedPools;
+    }
 
-    /** 执行单位绑定的核心逻辑 */
+    /** 执行单位绑定的核心逻辑，按单位列表顺序补充单位 */
     public static void run(LExecutor exec, LVar type, LVar count, LVar mode, LVar unitVar, LVar indexVar) {
+        run(exec, type, count, mode, unitVar, indexVar, BindOrder.any, null, null, FetchMode.next, null, null, null);
+    }
+    
+    /** 参考点坐标：逻辑中的坐标（@thisx、sensor @x等）以格为单位，转换为世界坐标；变量为对象或未定义时使用fallback */
+    private static float anchor(LVar var, float fallback) {
+        return var != null && !var.isobj ? World.unconv(var.numf()) : fallback;
+    }
+    
+    /**
+     * 执行单位绑定的核心逻辑
+     * order为nearest时优先补充距离(nearX, nearY)最近的单位，坐标无效时使用处理器位置；
+     * fetch决定返回哪个单位，sizeVar不为null时输出维护后的单位池大小；
+     * group为非空字符串时使用队伍内的命名共享单位组，多个处理器共用，每tick只维护一次
+     */
+    public static void run(LExecutor exec, LVar type, LVar count, LVar mode, LVar unitVar, LVar indexVar, BindOrder order, LVar nearX, LVar nearY,
+                           FetchMode fetch, LVar fetchIndex, LVar sizeVar, LVar group) {
         // 获取单位类型和数量
         UnitType unitType = null;
         int bindCount = 1;
@@ -64,13 +373,31 @@ public class LUnitBindGroupRUN {
         }
         
         // 获取或创建单位池
-        UnitPool pool = executorPools.get(exec.hashCode(), UnitPool::new);
+        String groupName = groupName(group);
+        UnitPool pool = groupName != null ? sharedGroup(exec.team, groupName, true) : getPool(exec);
+        long now = (long)state.tick;
+        pool.usedTick = now;
+        
+        // 单位类型改变时解绑原有单位
+        if (pool.type != unitType) {
+            pool.releaseAll(exec);
+            pool.type = unitType;
+        }
+        pool.mode = modeValue;
+        pool.order = order;
+        if (order == BindOrder.nearest || fetch == FetchMode.distance) {
+            float bx = exec.build != null ? exec.build.x : 0f, by = exec.build != null ? exec.build.y : 0f;
+            pool.nearX = anchor(nearX, bx);
+            pool.nearY = anchor(nearY, by);
+        }
         
-        // 设置单位类型
-        pool.type = unitType;
+        // 单位池维护，共享单位组每tick只由第一个使用它的处理器维护一次
+        if (!pool.shared || pool.maintainedTick != now) {
+            pool.maintainedTick = now;
+            maintainUnitPool(exec, pool, unitType, bindCount, modeValue);
+        }
         
-        // 单位池维护
-        maintainUnitPool(exec, pool, unitType, bindCount, modeValue);
+        if (sizeVar != null) sizeVar.setnum(pool.units.size);
         
         // 检查维护后单位池是否为空
         if (pool.units.isEmpty()) {
@@ -80,25 +407,127 @@ public class LUnitBindGroupRUN {
             return;
         }
         
-        // 执行索引处理逻辑
-        handleIndexLogic(pool, unitVar, indexVar);
+        // 按取出方式返回单位
+        boolean found;
+        switch (fetch) {
+            case index:
+                found = handleFetchIndex(exec, pool, fetchIndex == null ? 1 : (int)fetchIndex.num(), unitVar, indexVar);
+                break;
+            case health:
+            case distance:
+                found = handleFetchHeap(exec, pool, fetch, unitVar, indexVar);
+                break;
+            default:
+                found = handleIndexLogic(exec, pool, unitVar, indexVar);
+                break;
+        }
+        // 取出时移出了单位，更新池大小
+        if (sizeVar != null) sizeVar.setnum(pool.units.size);
+        
+        if (!found) {
+            pool.isUsed = false;
+            pool.controller = null;
+            unitVar.setobj(Core.bundle.get("unitbindgroup.error.emptyunitpool", "单位池为空"));
+            indexVar.setnum(-1);
+        }
     }
     
-   //索引处理逻辑
-    private static void handleIndexLogic(UnitPool pool, LVar unitVar, LVar indexVar) {
-        // 确保计数器在有效范围内循环（防止索引越界）
-        pool.currentIndex %= pool.units.size;
-        if (pool.currentIndex < 0) pool.currentIndex += pool.units.size;
-        
-        // 获取当前索引对应的单位
-        Unit unit = pool.units.get(pool.currentIndex);
+   //索引处理逻辑：只检查即将返回的单位，不符合条件的移出后取下一个，池为空时返回false
+    private static boolean handleIndexLogic(LExecutor exec, UnitPool pool, LVar unitVar, LVar indexVar) {
+        while (!pool.units.isEmpty()) {
+            // 确保计数器在有效范围内循环（防止索引越界）
+            pool.currentIndex %= pool.units.size;
+            if (pool.currentIndex < 0) pool.currentIndex += pool.units.size;
+            
+            // 获取当前索引对应的单位
+            Unit unit = pool.units.get(pool.currentIndex);
+            
+            if (!isUnitRetained(exec, pool, unit)) {
+                // 移出后后续单位前移，当前索引不变
+                pool.removeIndex(pool.currentIndex);
+                releaseUnit(exec, pool, unit);
+                continue;
+            }
+            
+            // 设置返回值
+            unitVar.setobj(unit);
+            indexVar.setnum(pool.currentIndex + 1); // 索引从1开始
+            
+            // 索引递增，下次执行时将返回下一个单位
+            pool.currentIndex++;
+            return true;
+        }
+        return false;
+    }
+    
+    //按索引取出：返回指定位置（从1开始）的单位，不改变轮流返回的位置；索引超出范围时返回null和-1
+    private static boolean handleFetchIndex(LExecutor exec, UnitPool pool, int index, LVar unitVar, LVar indexVar) {
+        int i = index - 1;
+        while (i >= 0 && i < pool.units.size) {
+            Unit unit = pool.units.get(i);
+            if (!isUnitRetained(exec, pool, unit)) {
+                // 移出后后续单位前移，同一索引对应下一个单位
+                pool.removeIndex(i);
+                releaseUnit(exec, pool, unit);
+                continue;
+            }
+            unitVar.setobj(unit);
+            indexVar.setnum(index);
+            return true;
+        }
+        if (pool.units.isEmpty()) return false;
+        unitVar.setobj(null);
+        indexVar.setnum(-1);
+        return true;
+    }
+    
+    //按生命值/距离取出：返回堆顶单位，每次只增量更新少量单位的键值
+    private static boolean handleFetchHeap(LExecutor exec, UnitPool pool, FetchMode mode, LVar unitVar, LVar indexVar) {
+        LUnitPoolHeap heap = pool.heap(mode);
+        while (heap.size() > 0) {
+            Unit unit = heap.refresh(pool::heapKey, LUnitPoolHeap.rekeyPerFetch);
+            if (!isUnitRetained(exec, pool, unit)) {
+                pool.remove(unit);
+                releaseUnit(exec, pool, unit);
+                continue;
+            }
+            unitVar.setobj(unit);
+            indexVar.setnum(pool.units.indexOf(unit, true) + 1);
+            return true;
+        }
+        return false;
+    }
+    
+    //检查池中单位是否仍然保留：存活、类型一致，并按mode检查控制方
+    private static boolean isUnitRetained(LExecutor exec, UnitPool pool, Unit unit) {
+        // 1. 单位存活判断
+        if (!unit.isValid()) return false;
+        // 2. 单位类型判断
+        if (unit.type != pool.type) return false;
         
-        // 设置返回值
-        unitVar.setobj(unit);
-        indexVar.setnum(pool.currentIndex + 1); // 索引从1开始
+        // 3. 控制方判断，根据mode值执行不同的逻辑
+        boolean retained;
+        switch (pool.mode) {
+            case 1: // 不进行控制方检查
+                retained = true;
+                break;
+            case 3: // 判断控制方是否为自身，不是则移出
+                // 共享单位组中"自身"指任意使用该组的处理器，按模式2处理
+                retained = unit.controller() instanceof LogicAI la && !unit.isPlayer() && (pool.shared || la.controller == exec.build);
+                break;
+            default: // 模式2：判断控制方是否为玩家，是则移出
+                retained = unit.controller() instanceof LogicAI && !unit.isPlayer();
+                break;
+        }
         
-        // 索引递增，下次执行时将返回下一个单位
-        pool.currentIndex++;
+        // 4. 租约判断：单位已被其他处理器有效租用时移出，否则续约
+        return retained && LUnitLeases.acquire(unit, leaseHolder(exec, pool));
+    }
+    
+    //租约持有者：共享单位组为单位组本身，否则为处理器建筑，没有建筑时使用执行器本身
+    static Object leaseHolder(LExecutor exec, UnitPool pool) {
+        if (pool != null && pool.shared) return pool;
+        return exec.build != null ? exec.build : exec;
     }
     
      //绑定方法：绑定指定类型（type），指定数量（count）到单位池里
@@ -109,55 +538,57 @@ public class LUnitBindGroupRUN {
             return false;
         }
         
-        // 获取同类型的所有单位
-        Seq<Unit> allUnits = exec.team.data().unitCache(type);
-        
-        if (allUnits == null || allUnits.isEmpty()) {
-            return false;
-        }
-        
         int boundCount = 0;
         
-        // 遍历所有单位，按照绑定规则绑定
-        for (Unit unit : allUnits) {
-            if (boundCount >= count) break;
+        // 从空闲单位索引中取出单位，只处理需要的k个，不再遍历同类型的所有单位
+        while (boundCount < count) {
+            Unit unit = LUnitFreeIndex.poll(exec.team, type);
+            if (unit == null) break;
+            // 单位仍被其他处理器租用时跳过
+            if (!LUnitLeases.acquire(unit, leaseHolder(exec, pool))) continue;
             
-            // 检查单位是否可绑定
-            if (isUnitBindable(exec, unit)) {
-                // 预控制单位
-                preControlUnit(exec, unit);
-                pool.units.add(unit);
-                boundCount++;
-            }
+            // 预控制单位
+            preControlUnit(exec, unit);
+            if (pool.add(unit)) boundCount++;
         }
         
         return boundCount > 0;
     }
     
-    //检查单位是否可绑定
-    private static boolean isUnitBindable(LExecutor exec, Unit unit) {
-        // 1. 单位必须是有效的（即未死亡且已添加到游戏世界中）
-        if (!unit.isValid()) {
+    //最近绑定方法：在队伍空间树中以参考点为中心逐步扩大搜索范围，绑定距离最近的count个可绑定单位
+    public static boolean bindNearestUnits(LExecutor exec, UnitPool pool, UnitType type, int count, float x, float y) {
+        if (!type.logicControllable) {
             return false;
         }
         
-        // 2. 单位未受到任何有效控制
-        // 检查是否受逻辑控制
-        if (unit.controller() instanceof LogicAI) {
-            return false;
+        Seq<Unit> found = nearCandidates;
+        float maxRadius = Math.max(world.unitWidth(), world.unitHeight()) * 1.5f;
+        float radius = nearSearchRadius;
+        // 只接受圆形范围内的单位，保证范围外的单位一定更远；找到足够数量或覆盖整个地图后停止
+        while (true) {
+            float r = radius;
+            found.clear();
+            exec.team.data().tree().intersect(x - r, y - r, r * 2f, r * 2f, unit -> {
+                if (unit.type == type && unit.within(x, y, r) && LUnitFreeIndex.isFree(unit)) {
+                    found.add(unit);
+                }
+            });
+            if (found.size >= count || radius >= maxRadius) break;
+            radius *= 2f;
         }
         
-        // 检查是否受玩家控制
-        if (unit.isPlayer()) {
-            return false;
-        }
+        found.sort(unit -> unit.dst2(x, y));
         
-        // 检查是否受命令系统控制，只有当CommandAI有命令时才判断为不可绑定
-        if (unit.controller() instanceof CommandAI command && command.hasCommand()) {
-            return false;
+        int boundCount = 0;
+        for (int i = 0; i < found.size && boundCount < count; i++) {
+            Unit unit = found.get(i);
+            if (!LUnitLeases.acquire(unit, leaseHolder(exec, pool))) continue;
+            preControlUnit(exec, unit);
+            if (pool.add(unit)) boundCount++;
         }
+        found.clear();
         
-        return true;
+        return boundCount > 0;
     }
     
     //预控制单位（将单位的控制方设置为当前逻辑处理器）
@@ -176,7 +607,7 @@ public class LUnitBindGroupRUN {
             }
             
             // 设置控制器
-            if (exec.build != null) {
+            if (exec != null && exec.build != null) {
                 la.controller = exec.build;
             }
         }
@@ -191,80 +622,33 @@ public class LUnitBindGroupRUN {
         }
     }
     
-    //单位池维护方法
+    //释放移出池的单位：只有仍由当前处理器控制的单位才重置控制器，避免打断玩家或其他处理器的控制
+    private static void releaseUnit(LExecutor exec, UnitPool pool, Unit unit) {
+        LUnitLeases.release(unit, leaseHolder(exec, pool));
+        // 共享单位组的单位可能由任意使用该组的处理器控制
+        if (unit.isValid() && unit.controller() instanceof LogicAI la && (pool.shared || la.controller == exec.build)) {
+            unbindUnit(unit);
+            // 重置控制器后单位重新空闲，放回索引
+            LUnitFreeIndex.offer(unit);
+        }
+    }
+    
+    //单位池维护方法：单位的存活和控制方由事件及返回时的检查维护，这里只处理数量
     public static void maintainUnitPool(LExecutor exec, UnitPool pool, UnitType type, int count, int mode) {
         // 检查池中单位数量是否满足count要求，如果不足则补充单位
         if (pool.units.size < count) {
-            bindUnits(exec, pool, type, count - pool.units.size);
-        }
-      
-        
-        // 创建一个临时列表用于存储需要移除的单位
-        Seq<Unit> toRemove = new Seq<>();
-        
-        for (Unit unit : pool.units) {
-            // 1. 单位存活判断
-            if (!unit.isValid()) {
-                toRemove.add(unit);
-                continue;
-            }
-            
-            // 2. 控制方判断，根据mode值执行不同的逻辑
-            boolean removeUnit = false;
-            
-            switch (mode) {
-                case 1: // 不进行控制方检查
-                    break;
-                case 2: // 判断控制方是否为玩家，是则移出
-                    if (!(unit.controller() instanceof LogicAI) || unit.isPlayer()) {
-                        removeUnit = true;
-                    }
-                    break;
-                case 3: // 判断控制方是否为自身，不是则移出
-                    if (!(unit.controller() instanceof LogicAI) || 
-                        unit.isPlayer() || 
-                        (unit.controller() instanceof LogicAI la && la.controller != exec.build)) {
-                        removeUnit = true;
-                    }
-                    break;
-                default: // 默认与mode2相同
-                    if (!(unit.controller() instanceof LogicAI) || unit.isPlayer()) {
-                        removeUnit = true;
-                    }
-                    break;
-            }
-            
-            if (removeUnit) {
-                toRemove.add(unit);
-                continue;
-            }
-            
-            // 3. 单位类型判断
-            if (unit.type != type) {
-                toRemove.add(unit);
+            if (pool.order == BindOrder.nearest) {
+                bindNearestUnits(exec, pool, type, count - pool.units.size, pool.nearX, pool.nearY);
+            } else {
+                bindUnits(exec, pool, type, count - pool.units.size);
             }
         }
         
-        // 移除不符合条件的单位
-        for (Unit unit : toRemove) {
-            pool.units.remove(unit);
-            unbindUnit(unit);
-        }
-        
-        // 去重逻辑：使用单位ID去除重复的单位
-        ObjectMap<Integer, Unit> uniqueUnits = new ObjectMap<>();
-        for (Unit unit : pool.units) {
-            uniqueUnits.put(unit.id(), unit);
-        }
-        
-        // 用去重后的单位列表替换原列表
-        pool.units.clear();
-        pool.units.addAll(uniqueUnits.values());
-        
         // 超出数量移除逻辑：如果单位数量超过count，移除多余的单位
         while (pool.units.size > count) {
-            Unit unit = pool.units.pop(); // 从末尾移除
-            unbindUnit(unit);
+            Unit unit = pool.units.peek(); // 从末尾移除
+            pool.removeIndex(pool.units.size - 1);
+            releaseUnit(exec, pool, unit);
         }
         
         // 更新单位池使用状态和控制者
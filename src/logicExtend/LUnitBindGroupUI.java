@@ -35,6 +35,26 @@ public class LUnitBindGroupUI {
         }
     }
     
+    /** 补充单位时的选择顺序 */
+    public enum BindOrder {
+        /** 按队伍单位列表的顺序 */
+        any,
+        /** 优先绑定距离指定点最近的单位 */
+        nearest
+    }
+    
+    /** 从单位池中取出单位的方式 */
+    public enum FetchMode {
+        /** 依次轮流返回池中单位 */
+        next,
+        /** 返回指定索引（从1开始）的单位 */
+        index,
+        /** 返回生命值最低的单位 */
+        health,
+        /** 返回距离参考点最近的单位 */
+        distance
+    }
+    
     /** 单位绑定组指令类 */
     public static class UnitBindGroupStatement extends LStatement {
         
@@ -48,6 +68,18 @@ public class LUnitBindGroupUI {
         public String indexVar = "unitIndex";
         /** 控制方检查模式，默认值为mode2 */
         public Mode mode = Mode.mode2;
+        /** 补充单位时的选择顺序，默认值为any */
+        public BindOrder order = BindOrder.any;
+        /** nearest顺序的参考点坐标，默认为处理器自身位置 */
+        public String nearX = "@thisx", nearY = "@thisy";
+        /** 取出单位的方式，默认值为next */
+        public FetchMode fetch = FetchMode.next;
+        /** index方式要取出的单位索引（从1开始） */
+        public String fetchIndex = "1";
+        /** 存储单位池大小的变量名，为null时不输出 */
+        public String sizeVar = "null";
+        /** 命名共享单位组，为null时使用处理器自己的单位池 */
+        public String group = "null";
 
         /** 构建指令的UI界面 */
         @Override
@@ -111,6 +143,37 @@ public class LUnitBindGroupUI {
                 }, 1, cell -> cell.size(80, 40)));
             }, Styles.logict, () -> {}).size(60, 40).color(table.color).left().self(c -> tooltip(c, "unitbindgroup.mode"));
             
+            // 添加order参数按钮
+            table.add(" order ").left().self(c -> tooltip(c, "unitbindgroup.order"));
+            table.button(b -> {
+                b.label(() -> order.name());
+                b.clicked(() -> showSelect(b, BindOrder.values(), order, o -> {
+                    order = o;
+                    rebuild(table);
+                }, 1, cell -> cell.size(100, 40)));
+            }, Styles.logict, () -> {}).size(90, 40).color(table.color).left().self(c -> tooltip(c, "unitbindgroup.order"));
+            
+            // 添加fetch参数按钮
+            table.add(" fetch ").left().self(c -> tooltip(c, "unitbindgroup.fetch"));
+            table.button(b -> {
+                b.label(() -> fetch.name());
+                b.clicked(() -> showSelect(b, FetchMode.values(), fetch, f -> {
+                    fetch = f;
+                    rebuild(table);
+                }, 1, cell -> cell.size(100, 40)));
+            }, Styles.logict, () -> {}).size(90, 40).color(table.color).left().self(c -> tooltip(c, "unitbindgroup.fetch"));
+            
+            if (fetch == FetchMode.index) {
+                fields(table, "at", fetchIndex, str -> fetchIndex = str).size(80f, 40f).pad(2f);
+            }
+            
+            // nearest顺序或distance方式时显示参考点坐标
+            if (usesPoint()) {
+                row(table);
+                fields(table, "x", nearX, str -> nearX = str).size(90f, 40f).pad(2f);
+                fields(table, "y", nearY, str -> nearY = str).size(90f, 40f).pad(2f);
+            }
+            
             // 换行到第二排
             row(table);
             
@@ -121,6 +184,19 @@ public class LUnitBindGroupUI {
 
             // 添加indexVar标签和输入框
             fields(table, "index", indexVar, str -> indexVar = str).size(120f, 40f).pad(2f);
+            
+            row(table);
+            
+            // 添加sizeVar标签和输入框
+            fields(table, "size", sizeVar, str -> sizeVar = str).size(120f, 40f).pad(2f);
+            
+            // 添加group标签和输入框
+            fields(table, "group", group, str -> group = str).size(120f, 40f).pad(2f);
+        }
+        
+        /** 是否需要参考点坐标 */
+        private boolean usesPoint() {
+            return order == BindOrder.nearest || fetch == FetchMode.distance;
         }
         
     
@@ -129,7 +205,20 @@ public class LUnitBindGroupUI {
         @Override
         public LExecutor.LInstruction build(LAssembler builder) {
             // 将所有参数转换为LVar对象，并创建执行器实例
-            return new UnitBindGroupI(builder.var(type), builder.var(count), builder.var(mode.value), builder.var(unitVar), builder.var(indexVar));
+            UnitBindGroupI inst = new UnitBindGroupI(builder.var(type), builder.var(count), builder.var(mode.value), builder.var(unitVar), builder.var(indexVar));
+            inst.order = order;
+            inst.fetch = fetch;
+            // 未设置时不绑定变量，避免创建或覆盖用户的同名变量
+            inst.sizeVar = sizeVar == null || sizeVar.isEmpty() || sizeVar.equals("null") ? null : builder.var(sizeVar);
+            inst.group = builder.var(group);
+            if (fetch == FetchMode.index) {
+                inst.fetchIndex = builder.var(fetchIndex);
+            }
+            if (usesPoint()) {
+                inst.nearX = builder.var(nearX);
+                inst.nearY = builder.var(nearY);
+            }
+            return inst;
         }
 
         /** 指定指令在逻辑编辑器中的分类 */
@@ -174,6 +263,27 @@ public class LUnitBindGroupUI {
                 if (params.length >= 5) stmt.unitVar = params[4];
                 // 如果有第五个参数，则设置indexVar值
                 if (params.length >= 6) stmt.indexVar = params[5];
+                // 可选的选择顺序及参考点坐标
+                if (params.length >= 7) {
+                    try {
+                        stmt.order = BindOrder.valueOf(params[6]);
+                    } catch (IllegalArgumentException e) {
+                        stmt.order = BindOrder.any;
+                    }
+                }
+                if (params.length >= 8) stmt.nearX = params[7];
+                if (params.length >= 9) stmt.nearY = params[8];
+                // 可选的取出方式、索引及池大小输出变量
+                if (params.length >= 10) {
+                    try {
+                        stmt.fetch = FetchMode.valueOf(params[9]);
+                    } catch (IllegalArgumentException e) {
+                        stmt.fetch = FetchMode.next;
+                    }
+                }
+                if (params.length >= 11) stmt.fetchIndex = params[10];
+                if (params.length >= 12) stmt.sizeVar = params[11];
+                if (params.length >= 13) stmt.group = params[12];
                 // 读取后处理，确保指令状态正确
                 stmt.afterRead();
                 return stmt;
@@ -187,6 +297,14 @@ public class LUnitBindGroupUI {
         public void write(StringBuilder builder){
             // 格式：指令名称 + 空格 + 单位类型标识 + 空格 + count值 + 空格 + mode值 + 空格 + unitVar + 空格 + indexVar
             builder.append("unitBindGroup ").append(type).append(" ").append(count).append(" ").append(mode.value).append(" ").append(unitVar).append(" ").append(indexVar);
+            // 默认顺序不输出，保持与旧版本的代码兼容
+            boolean extended = fetch != FetchMode.next || !sizeVar.equals("null") || !group.equals("null");
+            if (order != BindOrder.any || extended) {
+                builder.append(" ").append(order.name()).append(" ").append(nearX).append(" ").append(nearY);
+            }
+            if (extended) {
+                builder.append(" ").append(fetch.name()).append(" ").append(fetchIndex).append(" ").append(sizeVar).append(" ").append(group);
+            }
         }
     }
     
@@ -202,6 +320,18 @@ public class LUnitBindGroupUI {
         public LVar unitVar;
         /** 单位索引变量的变量引用 */
         public LVar indexVar;
+        /** 补充单位时的选择顺序 */
+        public BindOrder order = BindOrder.any;
+        /** nearest顺序的参考点坐标变量 */
+        public LVar nearX, nearY;
+        /** 取出单位的方式 */
+        public FetchMode fetch = FetchMode.next;
+        /** index方式的单位索引变量 */
+        public LVar fetchIndex;
+        /** 单位池大小变量 */
+        public LVar sizeVar;
+        /** 命名共享单位组变量 */
+        public LVar group;
 
         /** 构造函数，指定目标单位类型、数量、模式、单位变量和索引变量 */
         public UnitBindGroupI(LVar type, LVar count, LVar mode, LVar unitVar, LVar indexVar) {
@@ -220,7 +350,7 @@ public class LUnitBindGroupUI {
         @Override
         public void run(LExecutor exec) {
             // 调用外部类LUnitBindGroupRUN中的run方法执行实际逻辑
-            LUnitBindGroupRUN.run(exec, type, count, mode, unitVar, indexVar);
+            LUnitBindGroupRUN.run(exec, type, count, mode, unitVar, indexVar, order, nearX, nearY, fetch, fetchIndex, sizeVar, group);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+package logicExtend;
+
+import arc.Events;
+import arc.struct.IntMap;
+import arc.struct.IntSet;
+import arc.struct.Seq;
+import mindustry.ai.types.CommandAI;
+import mindustry.ai.types.LogicAI;
+import mindustry.game.EventType;
+import mindustry.game.Team;
+import mindustry.gen.Groups;
+import mindustry.gen.Unit;
+import mindustry.type.UnitType;
+
+/**
+ * 可绑定单位索引，按队伍和单位类型记录当前空闲（未被逻辑/玩家控制、没有CommandAI命令）的单位
+ * 单位生成、从单位池释放时加入索引，并每tick增量扫描少量单位补充遗漏的空闲单位；
+ * 单位死亡或被其他控制方接管时不立即移除，取出时检查，不可绑定的直接丢弃
+ */
+public class LUnitFreeIndex {
+
+    /** 每tick增量扫描的单位数 */
+    public static int sweepPerTick = 64;
+
+    /** 单个队伍+类型的空闲单位 */
+    private static class Bucket {
+        final Seq<Unit> units = new Seq<>();
+        final IntSet ids = new IntSet();
+        // 首次查询时从队伍单位缓存中完整扫描一次
+        boolean seeded = false;
+    }
+
+    /** (队伍id, 类型id) -> 空闲单位 */
+    private static final IntMap<Bucket> buckets = new IntMap<>();
+    /** 增量扫描的位置 */
+    private static int sweepCursor = 0;
+
+    /** 注册维护事件 */
+    public static void init() {
+        Events.on(EventType.UnitCreateEvent.class, e -> offer(e.unit));
+        Events.on(EventType.ResetEvent.class, e -> clear());
+        Events.run(EventType.Trigger.update, LUnitFreeIndex::sweep);
+    }
+
+    /** 单位是否空闲可绑定 */
+    public static boolean isFree(Unit unit) {
+        // 1. 单位必须是有效的（即未死亡且已添加到游戏世界中）
+        if (unit == null || !unit.isValid()) return false;
+        // 2. 检查是否受逻辑控制
+        if (unit.controller() instanceof LogicAI) return false;
+        // 3. 检查是否受玩家控制
+        if (unit.isPlayer()) return false;
+        // 4. 检查是否受命令系统控制，只有当CommandAI有命令时才判断为不可绑定
+        return !(unit.controller() instanceof CommandAI command && command.hasCommand());
+    }
+
+    /** 将可能空闲的单位加入索引 */
+    public static synchronized void offer(Unit unit) {
+        if (!isFree(unit)) return;
+        Bucket bucket = buckets.get(key(unit.team, unit.type));
+        // 还未被查询过的类型不需要维护，首次查询时会完整扫描
+        if (bucket == null || !bucket.ids.add(unit.id())) return;
+        bucket.units.add(unit);
+        // unitCache在队伍统计刷新前可能为null（如该类型的第一个单位刚生成）
+        Seq<Unit> cache = unit.team.data().unitCache(unit.type);
+        if (bucket.units.size > (cache == null ? 0 : cache.size) * 2 + 16) {
+            compact(bucket);
+        }
+    }
+
+    /** 取出一个空闲单位，没有时返回null */
+    public static synchronized Unit poll(Team team, UnitType type) {
+        Bucket bucket = bucket(team, type);
+        while (!bucket.units.isEmpty()) {
+            Unit unit = bucket.units.pop();
+            bucket.ids.remove(unit.id());
+            // 死亡或已被接管的单位直接丢弃
+            if (isFree(unit) && unit.team == team && unit.type == type) {
+                return unit;
+            }
+        }
+        return null;
+    }
+
+    /** 当前索引中的单位数（含尚未检查的失效单位） */
+    public static synchronized int size(Team team, UnitType type) {
+        Bucket bucket = buckets.get(key(team, type));
+        return bucket == null ? 0 : bucket.units.size;
+    }
+
+    /** 清空索引 */
+    public static synchronized void clear() {
+        buckets.clear();
+        sweepCursor = 0;
+    }
+
+    private static Bucket bucket(Team team, UnitType type) {
+        int key = key(team, type);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(key, bucket);
+        }
+        if (!bucket.seeded) {
+            bucket.seeded = true;
+            Seq<Unit> cache = team.data().unitCache(type);
+            if (cache != null) {
+                for (Unit unit : cache) {
+                    if (isFree(unit) && bucket.ids.add(unit.id())) {
+                        bucket.units.add(unit);
+                    }
+                }
+            }
+        }
+        return bucket;
+    }
+
+    /** 每tick扫描少量单位，补充没有事件通知的空闲单位（如CommandAI命令结束、被其他处理器释放） */
+    private static synchronized void sweep() {
+        if (buckets.isEmpty()) return;
+        int total = Groups.unit.size();
+        if (total == 0) return;
+        int count = Math.min(sweepPerTick, total);
+        for (int i = 0; i < count; i++) {
+            if (sweepCursor >= total) sweepCursor = 0;
+            offer(Groups.unit.index(sweepCursor++));
+        }
+    }
+
+    /** 移除失效单位 */
+    private static void compact(Bucket bucket) {
+        bucket.units.retainAll(LUnitFreeIndex::isFree);
+        bucket.ids.clear();
+        for (Unit unit : bucket.units) {
+            bucket.ids.add(unit.id());
+        }
+    }
+
+    private static int key(Team team, UnitType type) {
+        return (team.id << 16) | type.id;
+    }
+}
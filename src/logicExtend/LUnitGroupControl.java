@@ -0,0 +1,235 @@
+package logicExtend;
+
+import arc.scene.ui.layout.*;
+
+import mindustry.ai.types.LogicAI;
+import mindustry.core.World;
+import mindustry.gen.*;
+import mindustry.logic.*;
+import mindustry.type.Item;
+import mindustry.ui.Styles;
+
+/** 单位组批量控制指令：对执行器单位池中的所有单位执行同一个控制操作 */
+public class LUnitGroupControl {
+
+    /** unitGroupControl指令的操作枚举 */
+    public enum UnitGroupControlType {
+        move("x", "y"),
+        approach("x", "y", "radius"),
+        stop,
+        target("x", "y", "shoot"),
+        boost("enable"),
+        flag("value"),
+        itemTake("from", "item", "amount"),
+        itemDrop("to", "amount");
+
+        public final String[] params;
+
+        UnitGroupControlType(String... params) {
+            this.params = params;
+        }
+    }
+
+    /** 单位组批量控制指令类 */
+    public static class UnitGroupControlStatement extends LStatement {
+        public UnitGroupControlType type = UnitGroupControlType.move;
+        public String p1 = "0", p2 = "0", p3 = "0";
+        /** 存储本次被控制的单位数量的变量名 */
+        public String result = "result";
+        /** 命名共享单位组，为null时控制处理器自己的单位池 */
+        public String group = "null";
+
+        @Override
+        public void build(Table table) {
+            rebuild(table);
+        }
+
+        private void rebuild(Table table) {
+            table.clearChildren();
+            table.left();
+
+            table.add(" ");
+
+            // 操作选择按钮
+            table.button(b -> {
+                b.label(() -> type.name());
+                b.clicked(() -> showSelect(b, UnitGroupControlType.values(), type, t -> {
+                    type = t;
+                    rebuild(table);
+                }, 2, cell -> cell.size(120, 50)));
+            }, Styles.logict, () -> {}).size(120, 40).color(table.color).left().padLeft(2);
+
+            fields(table, "result", result, v -> result = v).width(100f);
+            fields(table, "group", group, v -> group = v).width(100f);
+
+            row(table);
+
+            // 根据选择的操作显示不同的参数
+            int c = 0;
+            for(int i = 0; i < type.params.length; i++) {
+                final int index = i;
+                String paramName = type.params[i];
+
+                fields(table, paramName, index == 0 ? p1 : index == 1 ? p2 : p3, index == 0 ? v -> p1 = v : index == 1 ? v -> p2 = v : v -> p3 = v)
+                    .width(100f);
+
+                if(++c % 2 == 0) row(table);
+            }
+        }
+
+        @Override
+        public LCategory category() {
+            return LCategory.unit;
+        }
+
+        @Override
+        public void write(StringBuilder builder) {
+            builder.append("unitgroupcontrol ").append(type.name())
+                   .append(" ").append(p1)
+                   .append(" ").append(p2)
+                   .append(" ").append(p3)
+                   .append(" ").append(result)
+                   .append(" ").append(group);
+        }
+
+        @Override
+        public LExecutor.LInstruction build(LAssembler builder) {
+            UnitGroupControlI inst = new UnitGroupControlI(type, builder.var(p1), builder.var(p2), builder.var(p3), builder.var(result));
+            inst.group = builder.var(group);
+            return inst;
+        }
+    }
+
+    /** 单位组批量控制指令执行器类 */
+    public static class UnitGroupControlI implements LExecutor.LInstruction {
+        public UnitGroupControlType type;
+        public LVar p1, p2, p3;
+        /** 本次被控制的单位数量 */
+        public LVar result;
+        /** 命名共享单位组变量 */
+        public LVar group;
+
+        public UnitGroupControlI(UnitGroupControlType type, LVar p1, LVar p2, LVar p3, LVar result) {
+            this.type = type;
+            this.p1 = p1;
+            this.p2 = p2;
+            this.p3 = p3;
+            this.result = result;
+        }
+
+        public UnitGroupControlI() {
+        }
+
+        @Override
+        public void run(LExecutor exec) {
+            LUnitBindGroupRUN.UnitPool pool = LUnitBindGroupRUN.poolOf(exec, group);
+            if (pool == null || pool.units.isEmpty()) {
+                result.setnum(0);
+                return;
+            }
+
+            // 参数在循环外只读取一次
+            float x = World.unconv(p1.numf()), y = World.unconv(p2.numf());
+            Building building = p1.building();
+            Object p1Obj = p1.obj();
+            Item item = p2.obj() instanceof Item it ? it : null;
+            int amount = type == UnitGroupControlType.itemTake ? p3.numi() : p2.numi();
+
+            int controlled = 0;
+            for (int i = 0; i < pool.units.size; i++) {
+                Unit unit = pool.units.get(i);
+                LogicAI ai = checkLogicAI(exec, pool, unit);
+                if (ai == null) continue;
+
+                // 更新控制计时器，保持逻辑控制状态
+                ai.controlTimer = LogicAI.logicControlTimeout;
+                controlled++;
+
+                switch (type) {
+                    case move:
+                        ai.control = LUnitControl.move;
+                        ai.moveX = x;
+                        ai.moveY = y;
+                        break;
+                    case approach:
+                        ai.control = LUnitControl.approach;
+                        ai.moveX = x;
+                        ai.moveY = y;
+                        ai.moveRad = World.unconv(p3.numf());
+                        break;
+                    case stop:
+                        ai.control = LUnitControl.stop;
+                        unit.mineTile = null;
+                        unit.clearBuilding();
+                        break;
+                    case target:
+                        ai.posTarget.set(x, y);
+                        ai.aimControl = LUnitControl.target;
+                        ai.mainTarget = null;
+                        ai.shoot = p3.bool();
+                        break;
+                    case boost:
+                        ai.boost = p1.bool();
+                        break;
+                    case flag:
+                        unit.flag = p1.num();
+                        break;
+                    case itemTake:
+                        if (LTransferBudget.tryAcquire(exec)) {
+                            FastUnitControl.itemTake(unit, building, item, amount);
+                        } else {
+                            LTransferBudget.defer(exec, unit, building, () -> FastUnitControl.itemTake(unit, building, item, amount));
+                        }
+                        break;
+                    case itemDrop:
+                        if (LTransferBudget.tryAcquire(exec)) {
+                            FastUnitControl.itemDrop(unit, p1Obj, building, amount);
+                        } else {
+                            LTransferBudget.defer(exec, unit, building, () -> FastUnitControl.itemDrop(unit, p1Obj, building, amount));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            result.setnum(controlled);
+        }
+
+        /** 池中单位仍由当前处理器逻辑控制且租约有效时返回其LogicAI并续约，否则返回null（交由单位池在返回单位时移出） */
+        static LogicAI checkLogicAI(LExecutor exec, LUnitBindGroupRUN.UnitPool pool, Unit unit) {
+            if (unit.isValid() && unit.team == exec.team && !unit.isPlayer() && unit.controller() instanceof LogicAI ai
+                && LUnitLeases.acquire(unit, LUnitBindGroupRUN.leaseHolder(exec, pool))) {
+                if (exec.build != null) ai.controller = exec.build;
+                return ai;
+            }
+            return null;
+        }
+    }
+
+    /** 注册自定义指令 */
+    public static void create() {
+        LAssembler.customParsers.put("unitgroupcontrol", params -> {
+            UnitGroupControlStatement stmt = new UnitGroupControlStatement();
+
+            if (params.length > 1) {
+                try {
+                    stmt.type = UnitGroupControlType.valueOf(params[1]);
+                } catch (IllegalArgumentException e) {
+                    stmt.type = UnitGroupControlType.move;
+                }
+            }
+
+            if (params.length >= 3) stmt.p1 = params[2];
+            if (params.length >= 4) stmt.p2 = params[3];
+            if (params.length >= 5) stmt.p3 = params[4];
+            if (params.length >= 6) stmt.result = params[5];
+            if (params.length >= 7) stmt.group = params[6];
+
+            stmt.afterRead();
+            return stmt;
+        });
+
+        LogicIO.allStatements.add(UnitGroupControlStatement::new);
+    }
+}
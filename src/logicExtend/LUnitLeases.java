@@ -0,0 +1,93 @@
+package logicExtend;
+
+import arc.Events;
+import arc.struct.IntMap;
+import mindustry.game.EventType;
+import mindustry.gen.Building;
+import mindustry.gen.Unit;
+
+import static mindustry.Vars.state;
+
+/**
+ * 单位租约分配器，在多个处理器之间协调单位的归属
+ * 处理器绑定单位时获得有时限的租约，之后每次使用单位时续约；
+ * 租约有效期内其他处理器不能通过单位池抢占该单位，过期或持有者失效后才能重新分配
+ */
+public class LUnitLeases {
+
+    /** 租约有效期（tick） */
+    public static long leaseTicks = 300;
+
+    /** 累计发放的租约数 */
+    public static long granted = 0;
+    /** 累计续约次数 */
+    public static long renewed = 0;
+    /** 累计因单位被其他处理器租用而失败的申请次数 */
+    public static long contended = 0;
+
+    /** 单个单位的租约 */
+    private static class Lease {
+        Object holder;
+        long expires;
+    }
+
+    /** 单位id -> 租约 */
+    private static final IntMap<Lease> leases = new IntMap<>();
+
+    /** 注册维护事件 */
+    public static void init() {
+        Events.on(EventType.UnitDestroyEvent.class, e -> leases.remove(e.unit.id()));
+        Events.on(EventType.ResetEvent.class, e -> leases.clear());
+    }
+
+    /** 申请或续约单位的租约，单位被其他处理器有效租用时返回false */
+    public static boolean acquire(Unit unit, Object holder) {
+        long now = (long)state.tick;
+        Lease lease = leases.get(unit.id());
+        if (lease == null) {
+            lease = new Lease();
+            leases.put(unit.id(), lease);
+        } else if (lease.holder == holder) {
+            lease.expires = now + leaseTicks;
+            renewed++;
+            return true;
+        } else if (isLive(lease, now)) {
+            contended++;
+            return false;
+        }
+        lease.holder = holder;
+        lease.expires = now + leaseTicks;
+        granted++;
+        return true;
+    }
+
+    /** 单位是否被其他处理器有效租用 */
+    public static boolean heldByOther(Unit unit, Object holder) {
+        Lease lease = leases.get(unit.id());
+        return lease != null && lease.holder != holder && isLive(lease, (long)state.tick);
+    }
+
+    /** 释放租约，只有持有者本身可以释放 */
+    public static void release(Unit unit, Object holder) {
+        Lease lease = leases.get(unit.id());
+        if (lease != null && lease.holder == holder) {
+            leases.remove(unit.id());
+        }
+    }
+
+    /** 当前记录的租约数量（含已过期但单位仍存活的） */
+    public static int size() {
+        return leases.size;
+    }
+
+    /** 租约统计信息 */
+    public static String stats() {
+        return "租约: " + leases.size + "，发放: " + granted + "，续约: " + renewed + "，冲突: " + contended;
+    }
+
+    /** 租约未过期且持有者仍然有效 */
+    private static boolean isLive(Lease lease, long now) {
+        if (lease.expires < now) return false;
+        return !(lease.holder instanceof Building build) || build.isValid();
+    }
+}
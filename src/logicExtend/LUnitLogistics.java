@@ -0,0 +1,274 @@
+package logicExtend;
+
+import arc.scene.ui.layout.*;
+import arc.struct.Seq;
+import arc.util.Structs;
+
+import mindustry.ai.types.LogicAI;
+import mindustry.gen.*;
+import mindustry.logic.*;
+import mindustry.type.Item;
+
+import java.util.Arrays;
+
+import static mindustry.Vars.*;
+
+/**
+ * 单位池批量物流分配指令
+ * 把执行器单位池中的运输单位一次性分配给来源和目标建筑：空载单位分配到来源取物，
+ * 携带该物品的单位分配到目标放物；每个单位只保留最近的若干个候选建筑，按距离排序后贪心分配，
+ * 同时扣除建筑的剩余库存/容量，然后为每个单位下达移动指令，在范围内的直接转移物品
+ */
+public class LUnitLogistics {
+
+    /** 每个单位保留的最近候选建筑数 */
+    public static int candidatesPerUnit = 8;
+    /** 来源使用物品位置索引时，只取距离单位池中心最近的建筑数 */
+    public static int maxIndexSources = 64;
+    /** 单次分配的候选组合上限，超出时放弃本次分配 */
+    public static int maxPairs = 1 << 20;
+
+    /** 单位池批量物流分配指令类 */
+    public static class UnitLogisticsStatement extends LStatement {
+        public String item = "@copper";
+        /** 处理器连接中前split个建筑为来源，其余为目标；split不大于0时来源使用队伍物品位置索引 */
+        public String split = "1";
+        /** 存储本次被分配的单位数量的变量名 */
+        public String result = "result";
+        /** 命名共享单位组，为null时使用处理器自己的单位池 */
+        public String group = "null";
+
+        @Override
+        public void build(Table table) {
+            table.clearChildren();
+            table.left();
+
+            fields(table, "item", item, v -> item = v).width(100f);
+            fields(table, "split", split, v -> split = v).width(60f);
+
+            row(table);
+
+            fields(table, "result", result, v -> result = v).width(100f);
+            fields(table, "group", group, v -> group = v).width(100f);
+        }
+
+        @Override
+        public LCategory category() {
+            return LCategory.unit;
+        }
+
+        @Override
+        public void write(StringBuilder builder) {
+            builder.append("unitlogistics ").append(item)
+                   .append(" ").append(split)
+                   .append(" ").append(result)
+                   .append(" ").append(group);
+        }
+
+        @Override
+        public LExecutor.LInstruction build(LAssembler builder) {
+            return new UnitLogisticsI(builder.var(item), builder.var(split), builder.var(result), builder.var(group));
+        }
+    }
+
+    /** 单位池批量物流分配指令执行器类，分配用的临时数组在每条指令内复用 */
+    public static class UnitLogisticsI implements LExecutor.LInstruction {
+        public LVar item, split, result, group;
+
+        private final Seq<Unit> units = new Seq<>();
+        private final Seq<LogicAI> ais = new Seq<>();
+        private final Seq<Building> targets = new Seq<>();
+        /** 建筑剩余可取出的物品数（来源）或可放入的物品数（目标） */
+        private int[] remaining = new int[16];
+        private boolean[] assigned = new boolean[16];
+        /** (距离平方的位模式 << 32) | (单位序号 << 16) | 建筑序号，按距离排序 */
+        private long[] pairs = new long[64];
+        /** 单个单位最近的候选组合，按距离升序 */
+        private long[] nearest = new long[8];
+
+        public UnitLogisticsI(LVar item, LVar split, LVar result, LVar group) {
+            this.item = item;
+            this.split = split;
+            this.result = result;
+            this.group = group;
+        }
+
+        public UnitLogisticsI() {
+        }
+
+        @Override
+        public void run(LExecutor exec) {
+            LUnitBindGroupRUN.UnitPool pool = LUnitBindGroupRUN.poolOf(exec, group);
+            Item it = item.obj() instanceof Item i ? i : null;
+            if (pool == null || pool.units.isEmpty() || it == null) {
+                result.setnum(0);
+                return;
+            }
+
+            // 收集来源和目标，sourceCount之前为来源
+            targets.clear();
+            int s = split.numi();
+            if (s <= 0) {
+                LItemIndex.collect(exec.team, it, targets);
+                // 连接的建筑都是目标，不能同时作为来源
+                targets.removeAll(build -> linked(exec, build));
+                // 全队的来源可能有上千个，只保留距离单位池中心最近的一部分
+                if (targets.size > maxIndexSources) {
+                    float cx = 0f, cy = 0f;
+                    for (int i = 0; i < pool.units.size; i++) {
+                        cx += pool.units.get(i).x;
+                        cy += pool.units.get(i).y;
+                    }
+                    float px = cx / pool.units.size, py = cy / pool.units.size;
+                    targets.sort(Structs.comparingFloat(build -> build.dst2(px, py)));
+                    targets.truncate(maxIndexSources);
+                }
+            }
+            for (int i = 0; i < Math.min(s, exec.links.length); i++) {
+                Building build = exec.links[i];
+                if (valid(exec, build) && build.items.has(it)) targets.add(build);
+            }
+            int sourceCount = targets.size;
+            for (int i = Math.max(s, 0); i < exec.links.length; i++) {
+                Building build = exec.links[i];
+                if (valid(exec, build)) targets.add(build);
+            }
+
+            // 只分配空载或携带该物品的单位
+            units.clear();
+            ais.clear();
+            for (int i = 0; i < pool.units.size; i++) {
+                Unit unit = pool.units.get(i);
+                if (unit.stack.amount > 0 && unit.item() != it) continue;
+                LogicAI ai = LUnitGroupControl.UnitGroupControlI.checkLogicAI(exec, pool, unit);
+                if (ai == null) continue;
+                units.add(unit);
+                ais.add(ai);
+            }
+            int perUnit = Math.max(1, candidatesPerUnit);
+            // 序号各占16位，组合数显式检查，避免数组长度溢出
+            if (units.isEmpty() || targets.isEmpty() || units.size > 0xffff || targets.size > 0xffff
+                || (long)units.size * Math.min(perUnit, targets.size) > maxPairs) {
+                units.clear();
+                ais.clear();
+                targets.clear();
+                result.setnum(0);
+                return;
+            }
+
+            ensureCapacity(units.size, targets.size, perUnit);
+            for (int j = 0; j < targets.size; j++) {
+                Building build = targets.get(j);
+                remaining[j] = j < sourceCount ? build.items.get(it) : build.acceptStack(it, Integer.MAX_VALUE / 2, units.first());
+            }
+
+            // 每个单位只保留最近的perUnit个可行组合，再对所有保留的组合按距离排序
+            int count = 0;
+            for (int a = 0; a < units.size; a++) {
+                Unit unit = units.get(a);
+                assigned[a] = false;
+                boolean loaded = unit.stack.amount > 0;
+                int from = loaded ? sourceCount : 0, to = loaded ? targets.size : sourceCount;
+                int kept = 0;
+                for (int j = from; j < to; j++) {
+                    if (remaining[j] <= 0) continue;
+                    long key = ((long)Float.floatToIntBits(unit.dst2(targets.get(j))) << 32) | ((long)a << 16) | j;
+                    if (kept == perUnit && key >= nearest[perUnit - 1]) continue;
+                    // 插入排序，保持nearest升序
+                    int pos = kept < perUnit ? kept++ : perUnit - 1;
+                    while (pos > 0 && nearest[pos - 1] > key) {
+                        nearest[pos] = nearest[pos - 1];
+                        pos--;
+                    }
+                    nearest[pos] = key;
+                }
+                System.arraycopy(nearest, 0, pairs, count, kept);
+                count += kept;
+            }
+            Arrays.sort(pairs, 0, count);
+
+            // 贪心分配：距离最近的组合优先，并扣除建筑的剩余库存/容量
+            int controlled = 0;
+            for (int k = 0; k < count; k++) {
+                int a = (int)(pairs[k] >>> 16) & 0xffff, j = (int)pairs[k] & 0xffff;
+                if (assigned[a] || remaining[j] <= 0) continue;
+                Unit unit = units.get(a);
+                boolean loaded = unit.stack.amount > 0;
+                int amount = loaded ? unit.stack.amount : unit.maxAccepted(it);
+                if (amount <= 0) continue;
+                assigned[a] = true;
+                remaining[j] -= amount;
+                controlled++;
+                dispatch(exec, ais.get(a), unit, targets.get(j), it, loaded, amount);
+            }
+
+            units.clear();
+            ais.clear();
+            targets.clear();
+            result.setnum(controlled);
+        }
+
+        /** 让单位靠近建筑，在转移范围内时直接取物或放物 */
+        private static void dispatch(LExecutor exec, LogicAI ai, Unit unit, Building build, Item item, boolean loaded, int amount) {
+            float range = logicItemTransferRange + build.block.size * tilesize / 2f;
+            ai.controlTimer = LogicAI.logicControlTimeout;
+            ai.control = LUnitControl.approach;
+            ai.moveX = build.x;
+            ai.moveY = build.y;
+            ai.moveRad = range / 2f;
+            if (!unit.within(build, range)) return;
+
+            // 超出转移预算时推迟到下一tick
+            if (!LTransferBudget.tryAcquire(exec)) {
+                if (loaded) {
+                    LTransferBudget.defer(exec, unit, build, () -> FastUnitControl.itemDrop(unit, build, build, amount));
+                } else {
+                    LTransferBudget.defer(exec, unit, build, () -> FastUnitControl.itemTake(unit, build, item, amount));
+                }
+                return;
+            }
+            if (loaded) {
+                FastUnitControl.itemDrop(unit, build, build, amount);
+            } else {
+                FastUnitControl.itemTake(unit, build, item, amount);
+            }
+        }
+
+        private static boolean linked(LExecutor exec, Building build) {
+            for (Building link : exec.links) {
+                if (link == build) return true;
+            }
+            return false;
+        }
+
+        private static boolean valid(LExecutor exec, Building build) {
+            return build != null && build.isValid() && build.team == exec.team && build.items != null;
+        }
+
+        private void ensureCapacity(int unitCount, int targetCount, int perUnit) {
+            if (remaining.length < targetCount) remaining = new int[Math.max(targetCount, remaining.length * 2)];
+            if (assigned.length < unitCount) assigned = new boolean[Math.max(unitCount, assigned.length * 2)];
+            if (nearest.length < perUnit) nearest = new long[perUnit];
+            // 调用方已保证unitCount * perUnit不超过maxPairs
+            int needed = unitCount * Math.min(perUnit, targetCount);
+            if (pairs.length < needed) pairs = new long[(int)Math.min(Math.max(needed, pairs.length * 2L), maxPairs)];
+        }
+    }
+
+    /** 注册自定义指令 */
+    public static void create() {
+        LAssembler.customParsers.put("unitlogistics", params -> {
+            UnitLogisticsStatement stmt = new UnitLogisticsStatement();
+
+            if (params.length >= 2) stmt.item = params[1];
+            if (params.length >= 3) stmt.split = params[2];
+            if (params.length >= 4) stmt.result = params[3];
+            if (params.length >= 5) stmt.group = params[4];
+
+            stmt.afterRead();
+            return stmt;
+        });
+
+        LogicIO.allStatements.add(UnitLogisticsStatement::new);
+    }
+}
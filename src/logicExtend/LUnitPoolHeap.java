@@ -0,0 +1,132 @@
+package logicExtend;
+
+import arc.func.Floatf;
+import arc.struct.IntIntMap;
+import mindustry.gen.Unit;
+
+/**
+ * 单位池的索引小顶堆，按键值（生命值、距离等）维护池中单位的顺序
+ * 单位的键值会持续变化，每次取出时只重新计算少量单位的键值（轮转），
+ * 避免每次都对整个池排序；堆顶单位在返回前总会重新计算
+ */
+public class LUnitPoolHeap {
+
+    /** 每次取出时重新计算键值的单位数 */
+    public static int rekeyPerFetch = 8;
+
+    private Unit[] units = new Unit[16];
+    private float[] keys = new float[16];
+    private int size = 0;
+    /** 单位id -> 堆中位置 */
+    private final IntIntMap positions = new IntIntMap();
+    /** 轮转重新计算键值的位置 */
+    private int cursor = 0;
+
+    /** 加入单位 */
+    public void add(Unit unit, float key) {
+        if (positions.containsKey(unit.id())) return;
+        if (size == units.length) {
+            Unit[] newUnits = new Unit[size * 2];
+            float[] newKeys = new float[size * 2];
+            System.arraycopy(units, 0, newUnits, 0, size);
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            units = newUnits;
+            keys = newKeys;
+        }
+        units[size] = unit;
+        keys[size] = key;
+        positions.put(unit.id(), size);
+        siftUp(size++);
+    }
+
+    /** 移除单位 */
+    public void remove(Unit unit) {
+        int i = positions.remove(unit.id(), -1);
+        if (i == -1) return;
+        int last = --size;
+        if (i != last) {
+            move(last, i);
+            units[last] = null;
+            update(i, keys[i]);
+        } else {
+            units[last] = null;
+        }
+    }
+
+    /** 重新计算堆顶和count个轮转位置单位的键值，返回堆顶单位，堆为空时返回null */
+    public Unit refresh(Floatf<Unit> key, int count) {
+        for (int k = 0; k < count && size > 0; k++) {
+            if (cursor >= size) cursor = 0;
+            update(cursor, key.get(units[cursor]));
+            cursor++;
+        }
+        // 堆顶可能已被其他单位超过，重新计算直到稳定（最多size次，通常1~2次）
+        for (int k = 0; k < size; k++) {
+            Unit top = units[0];
+            update(0, key.get(top));
+            if (units[0] == top) break;
+        }
+        return peek();
+    }
+
+    /** 堆顶单位，堆为空时返回null */
+    public Unit peek() {
+        return size == 0 ? null : units[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) units[i] = null;
+        size = 0;
+        cursor = 0;
+        positions.clear();
+    }
+
+    /** 修改指定位置的键值并恢复堆序 */
+    private void update(int i, float key) {
+        keys[i] = key;
+        siftDown(siftUp(i));
+    }
+
+    private int siftUp(int i) {
+        Unit unit = units[i];
+        float key = keys[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) break;
+            move(parent, i);
+            i = parent;
+        }
+        place(unit, key, i);
+        return i;
+    }
+
+    private void siftDown(int i) {
+        Unit unit = units[i];
+        float key = keys[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if (key <= keys[child]) break;
+            move(child, i);
+            i = child;
+        }
+        place(unit, key, i);
+    }
+
+    private void move(int from, int to) {
+        units[to] = units[from];
+        keys[to] = keys[from];
+        positions.put(units[to].id(), to);
+    }
+
+    private void place(Unit unit, float key, int i) {
+        units[i] = unit;
+        keys[i] = key;
+        positions.put(unit.id(), i);
+    }
+}